@@ -0,0 +1,45 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.Collections;
+
+/**
+ * Base for {@link SlackService} implementations that adds asynchronous publishing without changing the
+ * interface. Unless a subclass does better, publishing asynchronously publishes right away on the calling thread
+ * and returns the outcome as a completed future, so implementations written against the two {@code publish}
+ * methods keep working.
+ */
+public abstract class AbstractSlackService implements SlackService {
+
+    /** Stands for every room when only the overall outcome is known. */
+    static final String ALL_ROOMS = "*";
+
+    /**
+     * Publishes on a background thread if the implementation can; the caller does not wait for Slack to answer.
+     */
+    public ListenableFuture<PublishResult> publishAsync(String message) {
+        return publishAsync(message, "warning");
+    }
+
+    public ListenableFuture<PublishResult> publishAsync(String message, String color) {
+        return published(publish(message, color));
+    }
+
+    /**
+     * Publishes through {@code slack}'s asynchronous publishing if it has any, otherwise right away.
+     */
+    static ListenableFuture<PublishResult> publishAsync(SlackService slack, String message, String color) {
+        if (slack instanceof AbstractSlackService) {
+            return ((AbstractSlackService) slack).publishAsync(message, color);
+        }
+        return published(slack.publish(message, color));
+    }
+
+    private static ListenableFuture<PublishResult> published(boolean success) {
+        RoomResult result = success ? RoomResult.success(ALL_ROOMS, 200)
+                : RoomResult.failure(ALL_ROOMS, RoomResult.NO_STATUS, "not published");
+        return Futures.immediateFuture(new PublishResult(Collections.singletonList(result)));
+    }
+}
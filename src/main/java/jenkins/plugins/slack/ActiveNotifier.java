@@ -9,24 +9,32 @@ import hudson.model.Cause;
 import hudson.model.CauseAction;
 import hudson.model.Hudson;
 import hudson.model.Result;
-import hudson.model.Run;
+import hudson.model.TaskListener;
 import hudson.scm.ChangeLogSet;
 import hudson.scm.ChangeLogSet.AffectedFile;
 import hudson.scm.ChangeLogSet.Entry;
 import hudson.tasks.test.AbstractTestResultAction;
 import hudson.triggers.SCMTrigger;
 import hudson.util.LogTaskListener;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.commons.lang.StringUtils;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Level.WARNING;
 
 @SuppressWarnings("rawtypes")
 public class ActiveNotifier implements FineGrainedNotifier {
@@ -34,16 +42,65 @@ public class ActiveNotifier implements FineGrainedNotifier {
     private static final Logger logger = Logger.getLogger(SlackListener.class.getName());
 
     SlackNotifier notifier;
-    BuildListener listener;
+    TaskListener listener;
 
     public ActiveNotifier(SlackNotifier notifier, BuildListener listener) {
+        this(notifier, (TaskListener) listener);
+    }
+
+    /**
+     * @param listener where to report problems; once the build has completed this must not be its log
+     */
+    ActiveNotifier(SlackNotifier notifier, TaskListener listener) {
         super();
         this.notifier = notifier;
         this.listener = listener;
     }
 
-    private SlackService getSlack(AbstractBuild r) {
-        return notifier.newSlackService(r, listener);
+    /**
+     * What all messages about one build event share. The build's environment and the {@link SlackService} are
+     * resolved at most once, on first use: computing the environment runs every EnvironmentContributor, which
+     * may have to reach the SCM or the node.
+     */
+    final class Notification {
+        private final AbstractBuild build;
+        /** Set instead of the build once it has completed. */
+        private final SlackCompletion completion;
+        private EnvVars environment;
+        private SlackService slack;
+
+        Notification(AbstractBuild build) {
+            this.build = build;
+            this.completion = null;
+        }
+
+        Notification(SlackCompletion completion) {
+            this.build = null;
+            this.completion = completion;
+        }
+
+        EnvVars getEnvironment() {
+            if (environment == null) {
+                environment = completion != null ? completion.getEnvironment()
+                        : SlackNotifier.environmentOf(build, listener);
+            }
+            return environment;
+        }
+
+        SlackService getSlack() {
+            if (slack == null) {
+                slack = completion != null
+                        ? notifier.newSlackService(completion.getProject().getFullName(), completion.getNumber(),
+                                completion.getResult(), getEnvironment())
+                        : notifier.newSlackService(build, getEnvironment());
+            }
+            return slack;
+        }
+
+        MessageBuilder newMessage() {
+            return completion != null ? new MessageBuilder(notifier, completion, this)
+                    : new MessageBuilder(notifier, build, this);
+        }
     }
 
     public void deleted(AbstractBuild r) {
@@ -52,35 +109,37 @@ public class ActiveNotifier implements FineGrainedNotifier {
     public void started(AbstractBuild build) {
 
         AbstractProject<?, ?> project = build.getProject();
+        Notification notification = new Notification(build);
 
         CauseAction causeAction = build.getAction(CauseAction.class);
 
         if (causeAction != null) {
             Cause scmCause = causeAction.findCause(SCMTrigger.SCMTriggerCause.class);
             if (scmCause == null) {
-                MessageBuilder message = new MessageBuilder(notifier, build);
+                MessageBuilder message = notification.newMessage();
                 message.append(causeAction.getShortDescription());
-                notifyStart(build, message.appendOpenLink().toString());
+                notifyStart(notification, build, message.appendOpenLink().toString());
                 // Cause was found, exit early to prevent double-message
                 return;
             }
         }
 
-        String changes = getChanges(build, notifier.includeCustomMessage());
+        String changes = getChanges(notification, build, notifier.includeCustomMessage());
         if (changes != null) {
-            notifyStart(build, changes);
+            notifyStart(notification, build, changes);
         } else {
-            notifyStart(build, getBuildStatusMessage(build, false, notifier.includeCustomMessage()));
+            notifyStart(notification, build,
+                    getBuildStatusMessage(notification, false, notifier.includeCustomMessage()));
         }
     }
 
-    private void notifyStart(AbstractBuild build, String message) {
+    private void notifyStart(Notification notification, AbstractBuild build, String message) {
         AbstractProject<?, ?> project = build.getProject();
         AbstractBuild<?, ?> previousBuild = project.getLastBuild().getPreviousCompletedBuild();
         if (previousBuild == null) {
-            getSlack(build).publish(message, "good");
+            publishAsync(notification.getSlack(), Collections.singletonList(message), "good");
         } else {
-            getSlack(build).publish(message, getBuildColor(previousBuild));
+            publishAsync(notification.getSlack(), Collections.singletonList(message), getBuildColor(previousBuild));
         }
     }
 
@@ -88,14 +147,22 @@ public class ActiveNotifier implements FineGrainedNotifier {
     }
 
     public void completed(AbstractBuild r) {
-        AbstractProject<?, ?> project = r.getProject();
-        Result result = r.getResult();
-        AbstractBuild<?, ?> previousBuild = project.getLastBuild();
-        do {
-            previousBuild = previousBuild.getPreviousCompletedBuild();
-        } while (previousBuild != null && previousBuild.getResult() == Result.ABORTED);
-        Result previousResult = (previousBuild != null) ? previousBuild.getResult() : Result.SUCCESS;
-        if ((result == Result.ABORTED && notifier.getNotifyAborted())
+        SlackCompletion completion = SlackCompletion.of(r, notifier);
+        if (completion != null) {
+            completion.capture(listener);
+            completed(completion);
+        }
+    }
+
+    /**
+     * @param previousResult the result of the latest build before it that was not aborted, null if there is none
+     * @return whether the notifier notifies builds that end with {@code result}
+     */
+    static boolean notifies(SlackNotifier notifier, Result result, Result previousResult) {
+        if (previousResult == null) {
+            previousResult = Result.SUCCESS;
+        }
+        return (result == Result.ABORTED && notifier.getNotifyAborted())
                 || (result == Result.FAILURE //notify only on single failed build
                     && previousResult != Result.FAILURE
                     && notifier.getNotifyFailure())
@@ -107,18 +174,71 @@ public class ActiveNotifier implements FineGrainedNotifier {
                     && (previousResult == Result.FAILURE || previousResult == Result.UNSTABLE)
                     && notifier.getNotifyBackToNormal())
                 || (result == Result.SUCCESS && notifier.getNotifySuccess())
-                || (result == Result.UNSTABLE && notifier.getNotifyUnstable())) {
-            getSlack(r).publish(getBuildStatusMessage(r, notifier.includeTestSummary(),
-                    notifier.includeCustomMessage()), getBuildColor(r));
-            if (notifier.getCommitInfoChoice().showAnything()) {
-                getSlack(r).publish(getCommitList(r), getBuildColor(r));
+                || (result == Result.UNSTABLE && notifier.getNotifyUnstable());
+    }
+
+    /**
+     * Notifies a completion that {@link #notifies} has already decided on, once it has been captured.
+     */
+    void completed(SlackCompletion completion) {
+        Notification notification = new Notification(completion);
+        String statusMessage = getBuildStatusMessage(notification, notifier.includeTestSummary(),
+                notifier.includeCustomMessage());
+        List<String> messages = new ArrayList<String>();
+        messages.add(statusMessage);
+        if (notifier.getCommitInfoChoice().showAnything()) {
+            // sent along with the status message, and only after it
+            messages.add(getCommitList(notification, completion));
+        }
+        publishAsync(notification.getSlack(), messages, getBuildColor(completion.getResult()));
+    }
+
+    /**
+     * Publishes without parking the calling build thread on Slack I/O. Failures are only logged, as the
+     * build has no further use for the outcome.
+     */
+    private static void publishAsync(SlackService slack, List<String> messages, String color) {
+        Futures.addCallback(publishInOrder(slack, messages, color), new FutureCallback<PublishResult>() {
+            public void onSuccess(PublishResult result) {
+                if (!result.isSuccess()) {
+                    logger.warning("Slack notification failed for " + result.getFailures());
+                }
+            }
+
+            public void onFailure(Throwable t) {
+                logger.log(WARNING, "Slack notification failed", t);
             }
+        });
+    }
+
+    /**
+     * Each message goes out once the one before it has been delivered. A {@link StandardSlackService} journals
+     * them all up front, so a restart in between cannot lose the later ones.
+     */
+    private static ListenableFuture<PublishResult> publishInOrder(final SlackService slack,
+                                                                  final List<String> messages, final String color) {
+        if (slack instanceof StandardSlackService) {
+            return ((StandardSlackService) slack).publishAsync(messages, color);
+        }
+        ListenableFuture<PublishResult> first = AbstractSlackService.publishAsync(slack, messages.get(0), color);
+        if (messages.size() == 1) {
+            return first;
         }
+        return Futures.transform(first, new AsyncFunction<PublishResult, PublishResult>() {
+            public ListenableFuture<PublishResult> apply(PublishResult result) {
+                return result.isSuccess() ? publishInOrder(slack, messages.subList(1, messages.size()), color)
+                        : Futures.immediateFuture(result);
+            }
+        });
     }
 
     String getChanges(AbstractBuild r, boolean includeCustomMessage) {
+        return getChanges(new Notification(r), r, includeCustomMessage);
+    }
+
+    private String getChanges(Notification notification, AbstractBuild r, boolean includeCustomMessage) {
         if (!r.hasChangeSetComputed()) {
-            logger.info("No change set computed...");
+            logger.log(FINE, "No change set computed for {0}", r);
             return null;
         }
         ChangeLogSet changeSet = r.getChangeSet();
@@ -126,19 +246,22 @@ public class ActiveNotifier implements FineGrainedNotifier {
         Set<AffectedFile> files = new HashSet<AffectedFile>();
         for (Object o : changeSet.getItems()) {
             Entry entry = (Entry) o;
-            logger.info("Entry " + o);
             entries.add(entry);
             files.addAll(entry.getAffectedFiles());
         }
         if (entries.isEmpty()) {
-            logger.info("Empty change...");
+            logger.log(FINE, "Empty change set for {0}", r);
             return null;
         }
         Set<String> authors = new HashSet<String>();
         for (Entry entry : entries) {
             authors.add(entry.getAuthor().getDisplayName());
         }
-        MessageBuilder message = new MessageBuilder(notifier, r);
+        if (logger.isLoggable(FINE)) {
+            logger.log(FINE, "Changes for {0}: {1} entries, {2} file(s), {3} author(s)",
+                    new Object[]{r, entries.size(), files.size(), authors.size()});
+        }
+        MessageBuilder message = notification.newMessage();
         message.append("Started by changes from ");
         message.append(StringUtils.join(authors, ", "));
         message.append(" (");
@@ -152,45 +275,74 @@ public class ActiveNotifier implements FineGrainedNotifier {
     }
 
     String getCommitList(AbstractBuild r) {
+        return getCommitList(new Notification(r), r);
+    }
+
+    private String getCommitList(Notification notification, AbstractBuild r) {
         ChangeLogSet changeSet = r.getChangeSet();
-        List<Entry> entries = new LinkedList<Entry>();
+        List<String> messages = new LinkedList<String>();
+        List<String> authors = new LinkedList<String>();
         for (Object o : changeSet.getItems()) {
             Entry entry = (Entry) o;
-            logger.info("Entry " + o);
-            entries.add(entry);
+            messages.add(entry.getMsg());
+            authors.add(entry.getAuthor().getDisplayName());
         }
-        if (entries.isEmpty()) {
-            logger.info("Empty change...");
+        if (logger.isLoggable(FINE)) {
+            logger.log(FINE, "Commit list for {0}: {1} entries", new Object[]{r, messages.size()});
+        }
+        if (messages.isEmpty()) {
             Cause.UpstreamCause c = (Cause.UpstreamCause)r.getCause(Cause.UpstreamCause.class);
             if (c == null) {
                 return "No Changes.";
             }
-            String upProjectName = c.getUpstreamProject();
-            int buildNumber = c.getUpstreamBuild();
-            AbstractProject project = Hudson.getInstance().getItemByFullName(upProjectName, AbstractProject.class);
-            AbstractBuild upBuild = (AbstractBuild)project.getBuildByNumber(buildNumber);
-            return getCommitList(upBuild);
+            return getUpstreamCommitList(c.getUpstreamProject(), c.getUpstreamBuild());
         }
+        return getCommitList(notification, messages, authors);
+    }
+
+    private String getCommitList(Notification notification, SlackCompletion completion) {
+        if (completion.getCommitMessages().isEmpty()) {
+            if (completion.getUpstreamProject() == null) {
+                return "No Changes.";
+            }
+            return getUpstreamCommitList(completion.getUpstreamProject(), completion.getUpstreamBuild());
+        }
+        return getCommitList(notification, completion.getCommitMessages(), completion.getCommitAuthors());
+    }
+
+    private String getUpstreamCommitList(String upProjectName, int buildNumber) {
+        AbstractProject project = Hudson.getInstance().getItemByFullName(upProjectName, AbstractProject.class);
+        AbstractBuild upBuild = (AbstractBuild)project.getBuildByNumber(buildNumber);
+        return getCommitList(upBuild);
+    }
+
+    /**
+     * @param authors the author of each of {@code messages}
+     */
+    private String getCommitList(Notification notification, List<String> messages, List<String> authors) {
         Set<String> commits = new HashSet<String>();
-        for (Entry entry : entries) {
+        CommitInfoChoice commitInfoChoice = notifier.getCommitInfoChoice();
+        for (int i = 0; i < messages.size(); i++) {
             StringBuffer commit = new StringBuffer();
-            CommitInfoChoice commitInfoChoice = notifier.getCommitInfoChoice();
             if (commitInfoChoice.showTitle()) {
-                commit.append(entry.getMsg());
+                commit.append(messages.get(i));
             }
             if (commitInfoChoice.showAuthor()) {
-                commit.append(" [").append(entry.getAuthor().getDisplayName()).append("]");
+                commit.append(" [").append(authors.get(i)).append("]");
             }
             commits.add(commit.toString());
         }
-        MessageBuilder message = new MessageBuilder(notifier, r);
+        MessageBuilder message = notification.newMessage();
         message.append("Changes:\n- ");
         message.append(StringUtils.join(commits, "\n- "));
         return message.toString();
     }
 
     static String getBuildColor(AbstractBuild r) {
-        Result result = r.getResult();
+        return getBuildColor(r.getResult());
+    }
+
+    static String getBuildColor(Result result) {
         if (result == Result.SUCCESS) {
             return "good";
         } else if (result == Result.FAILURE) {
@@ -201,9 +353,15 @@ public class ActiveNotifier implements FineGrainedNotifier {
     }
 
     String getBuildStatusMessage(AbstractBuild r, boolean includeTestSummary, boolean includeCustomMessage) {
-        MessageBuilder message = new MessageBuilder(notifier, r);
+        return getBuildStatusMessage(new Notification(r), includeTestSummary, includeCustomMessage);
+    }
+
+    private String getBuildStatusMessage(Notification notification, boolean includeTestSummary,
+                                         boolean includeCustomMessage) {
+        MessageBuilder message = notification.newMessage();
         message.appendStatusMessage();
         message.appendDuration();
+        message.appendFailureStreak();
         message.appendOpenLink();
         if (includeTestSummary) {
             message.appendTestSummary();
@@ -229,16 +387,36 @@ public class ActiveNotifier implements FineGrainedNotifier {
         private StringBuffer message;
         private SlackNotifier notifier;
         private AbstractBuild build;
+        /** Set instead of the build once it has completed. */
+        private SlackCompletion completion;
+        private Notification notification;
 
         public MessageBuilder(SlackNotifier notifier, AbstractBuild build) {
+            this(notifier, build, null, null);
+        }
+
+        MessageBuilder(SlackNotifier notifier, AbstractBuild build, Notification notification) {
+            this(notifier, build, null, notification);
+        }
+
+        MessageBuilder(SlackNotifier notifier, SlackCompletion completion, Notification notification) {
+            this(notifier, null, completion, notification);
+        }
+
+        private MessageBuilder(SlackNotifier notifier, AbstractBuild build, SlackCompletion completion,
+                               Notification notification) {
             this.notifier = notifier;
             this.message = new StringBuffer();
             this.build = build;
+            this.completion = completion;
+            this.notification = notification;
             startMessage();
         }
 
         public MessageBuilder appendStatusMessage() {
-            message.append(this.escape(getStatusMessage(build)));
+            message.append(this.escape(completion != null
+                    ? getStatusMessage(completion.getProject(), completion.getNumber(), completion.getResult())
+                    : getStatusMessage(build)));
             return this;
         }
 
@@ -246,31 +424,25 @@ public class ActiveNotifier implements FineGrainedNotifier {
             if (r.isBuilding()) {
                 return STARTING_STATUS_MESSAGE;
             }
-            Result result = r.getResult();
-            Result previousResult;
-            Run previousBuild = r.getProject().getLastBuild().getPreviousBuild();
-            Run previousSuccessfulBuild = r.getPreviousSuccessfulBuild();
-            boolean buildHasSucceededBefore = previousSuccessfulBuild != null;
+            return getStatusMessage(r.getProject(), r.getNumber(), r.getResult());
+        }
+
+        static String getStatusMessage(AbstractProject<?, ?> project, int number, Result result) {
+            SlackResultHistory history = SlackResultHistory.of(project);
+            boolean buildHasSucceededBefore = history.lastSuccessEndTime(number) >= 0;
             
             /*
-             * If the last build was aborted, go back to find the last non-aborted build.
-             * This is so that aborted builds do not affect build transitions.
+             * Aborted builds are skipped, so that they do not affect build transitions.
              * I.e. if build 1 was failure, build 2 was aborted and build 3 was a success the transition
              * should be failure -> success (and therefore back to normal) not aborted -> success. 
              */
-            Run lastNonAbortedBuild = previousBuild;
-            while(lastNonAbortedBuild != null && lastNonAbortedBuild.getResult() == Result.ABORTED) {
-                lastNonAbortedBuild = lastNonAbortedBuild.getPreviousBuild();
-            }
-            
+            Result previousResult = history.previousNonAbortedResult(number);
             
             /* If all previous builds have been aborted, then use 
              * SUCCESS as a default status so an aborted message is sent
              */
-            if(lastNonAbortedBuild == null) {
+            if(previousResult == null) {
                 previousResult = Result.SUCCESS;
-            } else {
-                previousResult = lastNonAbortedBuild.getResult();
             }
             
             /* Back to normal should only be shown if the build has actually succeeded at some point.
@@ -314,15 +486,16 @@ public class ActiveNotifier implements FineGrainedNotifier {
         }
 
         private MessageBuilder startMessage() {
-            message.append(this.escape(build.getProject().getFullDisplayName()));
+            AbstractProject<?, ?> project = completion != null ? completion.getProject() : build.getProject();
+            message.append(this.escape(project.getFullDisplayName()));
             message.append(" - ");
-            message.append(this.escape(build.getDisplayName()));
+            message.append(this.escape(completion != null ? completion.getDisplayName() : build.getDisplayName()));
             message.append(" ");
             return this;
         }
 
         public MessageBuilder appendOpenLink() {
-            String url = notifier.getBuildServerUrl() + build.getUrl();
+            String url = notifier.getBuildServerUrl() + (completion != null ? completion.getUrl() : build.getUrl());
             message.append(" (<").append(url).append("|Open>)");
             return this;
         }
@@ -333,19 +506,53 @@ public class ActiveNotifier implements FineGrainedNotifier {
             if(message.toString().contains(BACK_TO_NORMAL_STATUS_MESSAGE)){
                 durationString = createBackToNormalDurationString();
             } else {
-                durationString = build.getDurationString();
+                durationString = getDurationString();
             }
             message.append(durationString);
             return this;
         }
 
+        /**
+         * Says how long a job that is still failing has been failing for.
+         */
+        public MessageBuilder appendFailureStreak() {
+            if ((completion == null && build.isBuilding())
+                    || !message.toString().contains(STILL_FAILING_STATUS_MESSAGE)) {
+                return this;
+            }
+            SlackFailureStreak streak = getFailureStreak();
+            if (streak != null && streak.isFailing()) {
+                long endTime = completion != null ? completion.getEndTime() : SlackResultHistory.endTimeOf(build);
+                message.append(", failing for ").append(streak.getCount())
+                        .append(streak.getCount() == 1 ? " build / " : " builds / ")
+                        .append(Util.getTimeSpanString(endTime - streak.getFailingSince()));
+            }
+            return this;
+        }
+
         public MessageBuilder appendTestSummary() {
-            AbstractTestResultAction<?> action = this.build
-                    .getAction(AbstractTestResultAction.class);
-            if (action != null) {
-                int total = action.getTotalCount();
-                int failed = action.getFailCount();
-                int skipped = action.getSkipCount();
+            boolean hasTests;
+            int total = 0;
+            int failed = 0;
+            int skipped = 0;
+            if (completion != null) {
+                hasTests = completion.hasTests();
+                if (hasTests) {
+                    total = completion.getTotalTests();
+                    failed = completion.getFailedTests();
+                    skipped = completion.getSkippedTests();
+                }
+            } else {
+                AbstractTestResultAction<?> action = this.build
+                        .getAction(AbstractTestResultAction.class);
+                hasTests = action != null;
+                if (hasTests) {
+                    total = action.getTotalCount();
+                    failed = action.getFailCount();
+                    skipped = action.getSkipCount();
+                }
+            }
+            if (hasTests) {
                 message.append("\nTest Status:\n");
                 message.append("\tPassed: " + (total - failed - skipped));
                 message.append(", Failed: " + failed);
@@ -359,12 +566,18 @@ public class ActiveNotifier implements FineGrainedNotifier {
         public MessageBuilder appendCustomMessage() {
             String customMessage = notifier.getCustomMessage();
             EnvVars envVars = new EnvVars();
-            try {
-                envVars = build.getEnvironment(new LogTaskListener(logger, INFO));
-            } catch (IOException e) {
-                logger.log(SEVERE, e.getMessage(), e);
-            } catch (InterruptedException e) {
-                logger.log(SEVERE, e.getMessage(), e);
+            if (notification != null) {
+                envVars = notification.getEnvironment();
+            } else if (completion != null) {
+                envVars = completion.getEnvironment();
+            } else {
+                try {
+                    envVars = build.getEnvironment(new LogTaskListener(logger, INFO));
+                } catch (IOException e) {
+                    logger.log(SEVERE, e.getMessage(), e);
+                } catch (InterruptedException e) {
+                    logger.log(SEVERE, e.getMessage(), e);
+                }
             }
             message.append("\n");
             message.append(envVars.expand(customMessage));
@@ -372,17 +585,26 @@ public class ActiveNotifier implements FineGrainedNotifier {
         }
         
         private String createBackToNormalDurationString(){
-            Run previousSuccessfulBuild = build.getPreviousSuccessfulBuild();
-            long previousSuccessStartTime = previousSuccessfulBuild.getStartTimeInMillis();
-            long previousSuccessDuration = previousSuccessfulBuild.getDuration();
-            long previousSuccessEndTime = previousSuccessStartTime + previousSuccessDuration;
-            long buildStartTime = build.getStartTimeInMillis();
-            long buildDuration = build.getDuration();
-            long buildEndTime = buildStartTime + buildDuration;
-            long backToNormalDuration = buildEndTime - previousSuccessEndTime;
+            int number = completion != null ? completion.getNumber() : build.getNumber();
+            SlackFailureStreak streak = getFailureStreak();
+            long backToNormalDuration = streak != null ? streak.downtimeEndedBy(number) : -1;
+            if (backToNormalDuration < 0) {
+                return getDurationString();
+            }
             return Util.getTimeSpanString(backToNormalDuration);
         }
 
+        private String getDurationString() {
+            return completion != null ? completion.getDurationString() : build.getDurationString();
+        }
+
+        /**
+         * @return null if the completed build's message was not expected to mention the streak
+         */
+        private SlackFailureStreak getFailureStreak() {
+            return completion != null ? completion.getFailureStreak() : SlackFailureStreak.of(build);
+        }
+
         public String escape(String string) {
             string = string.replace("&", "&amp;");
             string = string.replace("<", "&lt;");
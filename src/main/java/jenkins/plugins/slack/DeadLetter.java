@@ -0,0 +1,87 @@
+package jenkins.plugins.slack;
+
+import hudson.util.Secret;
+
+import java.util.Date;
+
+/**
+ * A build notification to one room that could not be delivered, kept by {@link SlackDeadLetters} so it can be
+ * replayed once Slack is reachable again. The token is saved encrypted.
+ */
+public final class DeadLetter {
+
+    private final long id;
+    private final long failedAt;
+    private final String teamDomain;
+    private final Secret token;
+    private final String roomId;
+    private final String message;
+    private final String color;
+    private final String error;
+    private final String job;
+    private final int build;
+
+    DeadLetter(long id, long failedAt, String teamDomain, String token, String roomId, String message,
+               String color, String error, String job, int build) {
+        this.id = id;
+        this.failedAt = failedAt;
+        this.teamDomain = teamDomain;
+        this.token = Secret.fromString(token);
+        this.roomId = roomId;
+        this.message = message;
+        this.color = color;
+        this.error = error;
+        this.job = job;
+        this.build = build;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Date getFailedAt() {
+        return new Date(failedAt);
+    }
+
+    public String getTeamDomain() {
+        return teamDomain;
+    }
+
+    String getToken() {
+        return Secret.toString(token);
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return full name of the job the notification was about, or null if it was not sent for a build
+     */
+    public String getJob() {
+        return job;
+    }
+
+    /**
+     * @return the build number, or 0 if unknown
+     */
+    public int getBuild() {
+        return build;
+    }
+
+    DeadLetter withId(long id) {
+        return new DeadLetter(id, failedAt, teamDomain, getToken(), roomId, message, color, error, job, build);
+    }
+}
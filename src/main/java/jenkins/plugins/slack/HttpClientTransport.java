@@ -0,0 +1,46 @@
+package jenkins.plugins.slack;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.HeadMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+import java.io.IOException;
+
+/**
+ * Posts through commons-httpclient, using connections from the shared {@link SlackConnectionPool}.
+ */
+final class HttpClientTransport implements SlackTransport {
+
+    private final HttpClient client;
+
+    HttpClientTransport(HttpClient client, int connectTimeoutMillis) {
+        this.client = client;
+        client.getParams().setConnectionManagerTimeout(connectTimeoutMillis);
+    }
+
+    public Response post(String url, RequestEntity body, int readTimeoutMillis) throws IOException {
+        PostMethod post = new PostMethod(url);
+        post.getParams().setSoTimeout(readTimeoutMillis);
+        try {
+            post.setRequestEntity(body);
+            int statusCode = client.executeMethod(post);
+            Header retryAfter = post.getResponseHeader("Retry-After");
+            return new Response(statusCode, post.getResponseBodyAsString(),
+                    retryAfter != null ? retryAfter.getValue() : null);
+        } finally {
+            post.releaseConnection();
+        }
+    }
+
+    public int warm(String url, int readTimeoutMillis) throws IOException {
+        HeadMethod head = new HeadMethod(url);
+        head.getParams().setSoTimeout(readTimeoutMillis);
+        try {
+            return client.executeMethod(head);
+        } finally {
+            head.releaseConnection();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package jenkins.plugins.slack;
+
+import hudson.util.Secret;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A single room's notification as recorded in the {@link OutboxJournal}. The token is journaled encrypted.
+ */
+final class OutboxEntry {
+
+    private final long id;
+    private final long segment;
+    private final long createdAt;
+    private final String teamDomain;
+    private final String token;
+    private final String roomId;
+    private final String message;
+    private final String color;
+    private final String job;
+    private final int build;
+
+    OutboxEntry(long id, long segment, long createdAt, String teamDomain, String token, String roomId,
+                String message, String color, String job, int build) {
+        this.id = id;
+        this.segment = segment;
+        this.createdAt = createdAt;
+        this.teamDomain = teamDomain;
+        this.token = token;
+        this.roomId = roomId;
+        this.message = message;
+        this.color = color;
+        this.job = job;
+        this.build = build;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    long getSegment() {
+        return segment;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    String getTeamDomain() {
+        return teamDomain;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    String getRoomId() {
+        return roomId;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    String getColor() {
+        return color;
+    }
+
+    /**
+     * @return full name of the job the notification is about, or null
+     */
+    String getJob() {
+        return job;
+    }
+
+    int getBuild() {
+        return build;
+    }
+
+    byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 + message.length());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(id);
+        out.writeLong(createdAt);
+        writeString(out, teamDomain);
+        writeString(out, Secret.fromString(token).getEncryptedValue());
+        writeString(out, roomId);
+        writeString(out, message);
+        writeString(out, color);
+        writeString(out, job);
+        out.writeInt(build);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static OutboxEntry decode(long segment, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long id = in.readLong();
+        long createdAt = in.readLong();
+        String teamDomain = readString(in);
+        String token = Secret.toString(Secret.decrypt(readString(in)));
+        String roomId = readString(in);
+        String message = readString(in);
+        String color = readString(in);
+        String job = readString(in);
+        int build = in.readInt();
+        return new OutboxEntry(id, segment, createdAt, teamDomain, token, roomId, message, color, job, build);
+    }
+
+    // writeUTF is limited to 64k, which a long commit list can exceed
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
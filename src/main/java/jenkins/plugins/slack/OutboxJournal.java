@@ -0,0 +1,343 @@
+package jenkins.plugins.slack;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of outgoing notifications, split into numbered segment files.
+ *
+ * Each record is {@code [type][length][crc32][payload]}. An entry is live from its ENQUEUE record until an ACK
+ * record for its id is appended. A BATCH record enqueues several entries at once, so that either all of them
+ * are journaled or, if the write is torn, none are. A record whose write fails is cut off the segment and
+ * writing carries on in a new segment, so a failed append leaves nothing behind to be replayed. Segments are
+ * only ever deleted from the head, once every entry written to them has been acknowledged, so an ACK can never
+ * outlive the ENQUEUE it refers to. Writes are flushed to the OS immediately but only forced to disk every
+ * {@link #syncBatchSize} records or when {@link #sync()} is called.
+ */
+final class OutboxJournal {
+
+    private static final Logger logger = Logger.getLogger(OutboxJournal.class.getName());
+
+    private static final byte ENQUEUE = 1;
+    private static final byte ACK = 2;
+    private static final byte BATCH = 3;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+
+    private final File directory;
+    private final long maxSegmentBytes;
+    private final int syncBatchSize;
+
+    /** Live entry count per segment number, oldest first. */
+    private final TreeMap<Long, Integer> liveEntries = new TreeMap<Long, Integer>();
+    private long activeSegment;
+    private FileOutputStream activeFile;
+    private DataOutputStream activeOut;
+    private long activeSize;
+    private int unsyncedRecords;
+    private long nextId;
+
+    OutboxJournal(File directory, long maxSegmentBytes, int syncBatchSize) {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.syncBatchSize = syncBatchSize;
+    }
+
+    /**
+     * Replays existing segments and opens a fresh one for writing.
+     *
+     * @return entries that were never acknowledged, in the order they were written
+     */
+    synchronized List<OutboxEntry> open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        Map<Long, OutboxEntry> pending = new LinkedHashMap<Long, OutboxEntry>();
+        long lastSegment = 0;
+        for (long segment : listSegments()) {
+            liveEntries.put(segment, 0);
+            replaySegment(segment, pending);
+            lastSegment = segment;
+        }
+        for (OutboxEntry entry : pending.values()) {
+            liveEntries.put(entry.getSegment(), liveEntries.get(entry.getSegment()) + 1);
+            nextId = Math.max(nextId, entry.getId() + 1);
+        }
+        openSegment(lastSegment + 1);
+        compact();
+        return new ArrayList<OutboxEntry>(pending.values());
+    }
+
+    OutboxEntry append(String teamDomain, String token, String roomId, String message, String color)
+            throws IOException {
+        return append(teamDomain, token, roomId, message, color, null, 0);
+    }
+
+    synchronized OutboxEntry append(String teamDomain, String token, String roomId, String message, String color,
+                                    String job, int build) throws IOException {
+        OutboxEntry entry = new OutboxEntry(nextId++, activeSegment, System.currentTimeMillis(), teamDomain, token,
+                roomId, message, color, job, build);
+        writeRecord(ENQUEUE, entry.encode());
+        liveEntries.put(activeSegment, liveEntries.get(activeSegment) + 1);
+        if (activeSize >= maxSegmentBytes) {
+            openSegment(activeSegment + 1);
+        }
+        return entry;
+    }
+
+    /**
+     * Journals {@code parts} for each of {@code rooms} in a single record, room by room.
+     *
+     * @return the entries, all of one room's parts before the next room's
+     * @throws IOException if the record could not be written, in which case none of the entries were journaled
+     */
+    synchronized List<OutboxEntry> appendAll(String teamDomain, String token, String[] rooms, List<String> parts,
+                                             String color, String job, int build) throws IOException {
+        long createdAt = System.currentTimeMillis();
+        List<OutboxEntry> entries = new ArrayList<OutboxEntry>(rooms.length * parts.size());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(rooms.length * parts.size());
+        for (String roomId : rooms) {
+            for (String part : parts) {
+                OutboxEntry entry = new OutboxEntry(nextId++, activeSegment, createdAt, teamDomain, token, roomId,
+                        part, color, job, build);
+                byte[] encoded = entry.encode();
+                out.writeInt(encoded.length);
+                out.write(encoded);
+                entries.add(entry);
+            }
+        }
+        out.flush();
+        writeRecord(BATCH, bytes.toByteArray());
+        liveEntries.put(activeSegment, liveEntries.get(activeSegment) + entries.size());
+        if (activeSize >= maxSegmentBytes) {
+            openSegment(activeSegment + 1);
+        }
+        return entries;
+    }
+
+    synchronized void acknowledge(OutboxEntry entry) throws IOException {
+        byte[] payload = new byte[8];
+        long id = entry.getId();
+        for (int i = 7; i >= 0; i--) {
+            payload[i] = (byte) id;
+            id >>>= 8;
+        }
+        writeRecord(ACK, payload);
+        Integer live = liveEntries.get(entry.getSegment());
+        if (live != null) {
+            liveEntries.put(entry.getSegment(), live - 1);
+        }
+        compact();
+    }
+
+    /**
+     * Forces any records written since the last sync to disk.
+     */
+    synchronized void sync() throws IOException {
+        if (unsyncedRecords > 0 && activeFile != null) {
+            activeOut.flush();
+            activeFile.getChannel().force(false);
+            unsyncedRecords = 0;
+        }
+    }
+
+    synchronized void close() throws IOException {
+        if (activeFile != null) {
+            sync();
+            activeOut.close();
+            activeFile = null;
+            activeOut = null;
+        }
+    }
+
+    synchronized int size() {
+        int size = 0;
+        for (int live : liveEntries.values()) {
+            size += live;
+        }
+        return size;
+    }
+
+    private void writeRecord(byte type, byte[] payload) throws IOException {
+        if (activeOut == null) {
+            throw new IOException("Outbox journal is closed");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        try {
+            activeOut.writeByte(type);
+            activeOut.writeInt(payload.length);
+            activeOut.writeLong(crc.getValue());
+            activeOut.write(payload);
+            activeOut.flush();
+        } catch (IOException e) {
+            discardPartialRecord();
+            throw e;
+        }
+        activeSize += 1 + 4 + 8 + payload.length;
+        if (++unsyncedRecords >= syncBatchSize) {
+            try {
+                sync();
+            } catch (IOException e) {
+                // the record is written, only not forced to disk yet; the next sync tries again
+                logger.log(Level.WARNING, "Unable to sync the Slack outbox", e);
+            }
+        }
+    }
+
+    /**
+     * Cuts what was written of a failed record off the segment and moves on to a new one, without flushing
+     * whatever of it is still buffered. Should the cut fail, the torn record still ends replay of the old
+     * segment, and nothing written after it is in that segment.
+     */
+    private void discardPartialRecord() {
+        try {
+            activeFile.getChannel().truncate(activeSize);
+            activeFile.getChannel().force(false);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to cut a failed record off outbox segment " + activeSegment, e);
+        }
+        try {
+            activeFile.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to close outbox segment " + activeSegment, e);
+        }
+        activeFile = null;
+        activeOut = null;
+        try {
+            openSegment(activeSegment + 1);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to open a new outbox segment, the outbox is closed", e);
+            activeFile = null;
+            activeOut = null;
+        }
+    }
+
+    private void openSegment(long segment) throws IOException {
+        if (activeFile != null) {
+            sync();
+            activeOut.close();
+        }
+        activeSegment = segment;
+        activeFile = new FileOutputStream(segmentFile(segment), true);
+        activeOut = new DataOutputStream(new BufferedOutputStream(activeFile));
+        activeSize = segmentFile(segment).length();
+        if (!liveEntries.containsKey(segment)) {
+            liveEntries.put(segment, 0);
+        }
+    }
+
+    /** Deletes fully acknowledged segments from the head of the journal, never the active one. */
+    private void compact() {
+        Iterator<Map.Entry<Long, Integer>> segments = liveEntries.entrySet().iterator();
+        while (segments.hasNext()) {
+            Map.Entry<Long, Integer> segment = segments.next();
+            if (segment.getKey() == activeSegment || segment.getValue() > 0) {
+                return;
+            }
+            File file = segmentFile(segment.getKey());
+            if (file.exists() && !file.delete()) {
+                logger.warning("Unable to delete compacted outbox segment " + file);
+                return;
+            }
+            segments.remove();
+        }
+    }
+
+    private void replaySegment(long segment, Map<Long, OutboxEntry> pending) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile(segment))));
+        try {
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                int length = in.readInt();
+                long checksum = in.readLong();
+                if (length < 0 || length > MAX_RECORD_BYTES) {
+                    throw new IOException("Invalid record length " + length);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (crc.getValue() != checksum) {
+                    throw new IOException("Checksum mismatch");
+                }
+                if (type == ENQUEUE) {
+                    OutboxEntry entry = OutboxEntry.decode(segment, payload);
+                    pending.put(entry.getId(), entry);
+                    nextId = Math.max(nextId, entry.getId() + 1);
+                } else if (type == BATCH) {
+                    DataInputStream batch = new DataInputStream(new ByteArrayInputStream(payload));
+                    for (int count = batch.readInt(); count > 0; count--) {
+                        byte[] encoded = new byte[batch.readInt()];
+                        batch.readFully(encoded);
+                        OutboxEntry entry = OutboxEntry.decode(segment, encoded);
+                        pending.put(entry.getId(), entry);
+                        nextId = Math.max(nextId, entry.getId() + 1);
+                    }
+                } else if (type == ACK) {
+                    long id = 0;
+                    for (byte b : payload) {
+                        id = (id << 8) | (b & 0xff);
+                    }
+                    pending.remove(id);
+                }
+            }
+        } catch (IOException e) {
+            // a torn write at the end of a segment when Jenkins went down; everything before it is intact
+            logger.log(Level.WARNING, "Stopped replaying outbox segment " + segmentFile(segment) + ": " + e.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+
+    private List<Long> listSegments() {
+        String[] names = directory.list(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        TreeMap<Long, String> sorted = new TreeMap<Long, String>();
+        if (names != null) {
+            for (String name : names) {
+                try {
+                    sorted.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), name);
+                } catch (NumberFormatException e) {
+                    logger.warning("Ignoring unexpected file in outbox: " + name);
+                }
+            }
+        }
+        return new ArrayList<Long>(sorted.keySet());
+    }
+
+    private File segmentFile(long segment) {
+        return new File(directory, SEGMENT_PREFIX + String.format("%012d", segment) + SEGMENT_SUFFIX);
+    }
+}
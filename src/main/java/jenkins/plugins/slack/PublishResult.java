@@ -0,0 +1,57 @@
+package jenkins.plugins.slack;
+
+import com.google.common.base.Function;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Per-room report for a message published to one or more Slack rooms.
+ */
+public final class PublishResult {
+
+    static final Function<List<RoomResult>, PublishResult> FROM_ROOM_RESULTS =
+            new Function<List<RoomResult>, PublishResult>() {
+                public PublishResult apply(List<RoomResult> roomResults) {
+                    return new PublishResult(roomResults);
+                }
+            };
+
+    private final List<RoomResult> roomResults;
+
+    public PublishResult(List<RoomResult> roomResults) {
+        this.roomResults = Collections.unmodifiableList(new ArrayList<RoomResult>(roomResults));
+    }
+
+    public List<RoomResult> getRoomResults() {
+        return roomResults;
+    }
+
+    public List<RoomResult> getFailures() {
+        List<RoomResult> failures = new ArrayList<RoomResult>();
+        for (RoomResult roomResult : roomResults) {
+            if (!roomResult.isSuccess()) {
+                failures.add(roomResult);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * True if every room accepted the message.
+     */
+    public boolean isSuccess() {
+        for (RoomResult roomResult : roomResults) {
+            if (!roomResult.isSuccess()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return roomResults.toString();
+    }
+}
@@ -0,0 +1,36 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.cli.CLICommand;
+import jenkins.model.Jenkins;
+import org.kohsuke.args4j.Option;
+
+/**
+ * {@code replay-slack-dead-letters}: sends undelivered Slack notifications again, for example after an outage.
+ */
+@Extension
+public class ReplaySlackDeadLettersCommand extends CLICommand {
+
+    @Option(name = "--channel", usage = "Only replay notifications for this channel")
+    public String channel;
+
+    @Option(name = "--discard", usage = "Discard the notifications instead of replaying them")
+    public boolean discard;
+
+    @Override
+    public String getShortDescription() {
+        return Messages.ReplaySlackDeadLettersCommandShortDescription();
+    }
+
+    @Override
+    protected int run() throws Exception {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        SlackDeadLetters deadLetters = SlackDeadLetters.get();
+        if (discard) {
+            stdout.println("Discarded " + deadLetters.discard(channel) + " Slack notification(s)");
+        } else {
+            stdout.println("Replaying " + deadLetters.replay(channel) + " Slack notification(s)");
+        }
+        return 0;
+    }
+}
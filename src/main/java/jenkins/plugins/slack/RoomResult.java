@@ -0,0 +1,118 @@
+package jenkins.plugins.slack;
+
+/**
+ * Outcome of posting a single message to a single Slack room.
+ */
+public final class RoomResult {
+
+    public static final int NO_STATUS = -1;
+    public static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private final String roomId;
+    private final boolean success;
+    private final int statusCode;
+    private final String error;
+    private final long retryAfterMillis;
+    private final boolean timedOut;
+    private final boolean suppressed;
+
+    private RoomResult(String roomId, boolean success, int statusCode, String error, long retryAfterMillis,
+                       boolean timedOut, boolean suppressed) {
+        this.roomId = roomId;
+        this.success = success;
+        this.statusCode = statusCode;
+        this.error = error;
+        this.retryAfterMillis = retryAfterMillis;
+        this.timedOut = timedOut;
+        this.suppressed = suppressed;
+    }
+
+    public static RoomResult success(String roomId, int statusCode) {
+        return new RoomResult(roomId, true, statusCode, null, 0, false, false);
+    }
+
+    public static RoomResult failure(String roomId, int statusCode, String error) {
+        return new RoomResult(roomId, false, statusCode, error, 0, false, false);
+    }
+
+    /**
+     * The same message had just been sent to this room, so it was not sent again. Counts as a success.
+     */
+    public static RoomResult suppressed(String roomId) {
+        return new RoomResult(roomId, true, NO_STATUS, null, 0, false, true);
+    }
+
+    /**
+     * Slack answered with HTTP 429 and asked us to wait {@code retryAfterMillis} before trying again.
+     */
+    public static RoomResult throttled(String roomId, long retryAfterMillis, String error) {
+        return new RoomResult(roomId, false, SC_TOO_MANY_REQUESTS, error, retryAfterMillis, false, false);
+    }
+
+    /**
+     * The notification's deadline ran out before this room could be posted to.
+     */
+    public static RoomResult timedOut(String roomId) {
+        return new RoomResult(roomId, false, NO_STATUS, "timed out", 0, true, false);
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * HTTP status returned by Slack, or {@link #NO_STATUS} if no response was received.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public boolean isSuppressed() {
+        return suppressed;
+    }
+
+    public boolean isThrottled() {
+        return statusCode == SC_TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * Delay requested by Slack's {@code Retry-After} header, or 0 if none was given.
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * True for failures that may go away on their own: no response at all, throttling or a server error.
+     */
+    public boolean isRetryable() {
+        return !success && (statusCode == NO_STATUS || statusCode == SC_TOO_MANY_REQUESTS || statusCode >= 500);
+    }
+
+    @Override
+    public String toString() {
+        if (suppressed) {
+            return roomId + ": duplicate, not sent";
+        }
+        if (success) {
+            return roomId + ": ok";
+        }
+        if (timedOut) {
+            return roomId + ": timed out";
+        }
+        return roomId + ": failed (" + (statusCode == NO_STATUS ? "no response" : "HTTP " + statusCode)
+                + (error != null ? ", " + error : "") + ")";
+    }
+}
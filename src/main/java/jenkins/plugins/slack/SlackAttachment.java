@@ -0,0 +1,23 @@
+package jenkins.plugins.slack;
+
+/**
+ * One colored attachment of a Slack post.
+ */
+final class SlackAttachment {
+
+    private final String message;
+    private final String color;
+
+    SlackAttachment(String message, String color) {
+        this.message = message;
+        this.color = color;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    String getColor() {
+        return color;
+    }
+}
@@ -0,0 +1,137 @@
+package jenkins.plugins.slack;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker per Slack team domain. After {@link #FAILURE_THRESHOLD} consecutive retryable failures the
+ * circuit opens and posts fail immediately instead of waiting on a doomed request. Once {@link #OPEN_MILLIS}
+ * has passed a single probe is let through; its outcome closes the circuit or opens it again.
+ */
+public final class SlackCircuitBreaker {
+
+    private static final Logger logger = Logger.getLogger(SlackCircuitBreaker.class.getName());
+
+    static final int FAILURE_THRESHOLD =
+            Integer.getInteger(SlackCircuitBreaker.class.getName() + ".failureThreshold", 5);
+    static final long OPEN_MILLIS = Long.getLong(SlackCircuitBreaker.class.getName() + ".openMillis", 30000L);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final ConcurrentMap<String, SlackCircuitBreaker> breakers =
+            new ConcurrentHashMap<String, SlackCircuitBreaker>();
+
+    private final String teamDomain;
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    SlackCircuitBreaker(String teamDomain, int failureThreshold, long openMillis) {
+        this.teamDomain = teamDomain;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    public static SlackCircuitBreaker forTeam(String teamDomain) {
+        SlackCircuitBreaker breaker = breakers.get(teamDomain);
+        if (breaker == null) {
+            SlackCircuitBreaker created = new SlackCircuitBreaker(teamDomain, FAILURE_THRESHOLD, OPEN_MILLIS);
+            breaker = breakers.putIfAbsent(teamDomain, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Current state of every team domain that has been posted to, sorted by team domain.
+     */
+    public static Map<String, State> getStates() {
+        Map<String, State> states = new TreeMap<String, State>();
+        for (SlackCircuitBreaker breaker : breakers.values()) {
+            states.put(breaker.teamDomain, breaker.getState());
+        }
+        return states;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    boolean allowRequest() {
+        return allowRequest(System.currentTimeMillis());
+    }
+
+    synchronized boolean allowRequest(long now) {
+        switch (state) {
+            case OPEN:
+                if (now - openedAt < openMillis) {
+                    return false;
+                }
+                logger.info("Probing Slack team " + teamDomain + " after circuit was open for " + (now - openedAt) + "ms");
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            case HALF_OPEN:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Gives back the probe for a caller that was let through but gave up before posting, so the next caller
+     * can probe instead. A caller that was let through while the circuit was closed may release another's
+     * probe this way, which only lets one extra probe through.
+     */
+    synchronized void releaseProbe() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * Feeds a post's outcome into the breaker. Only failures that suggest Slack itself is unavailable count;
+     * any answer from Slack, including a rejection or throttling, shows it is reachable.
+     */
+    void record(RoomResult result) {
+        if (result.isRetryable() && !result.isThrottled()) {
+            recordFailure(System.currentTimeMillis());
+        } else {
+            recordSuccess();
+        }
+    }
+
+    synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if (state != State.CLOSED) {
+            logger.info("Slack team " + teamDomain + " is reachable again, closing circuit");
+            state = State.CLOSED;
+        }
+    }
+
+    synchronized void recordFailure(long now) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            logger.warning("Opening circuit for Slack team " + teamDomain + " after " + consecutiveFailures
+                    + " consecutive failure(s)");
+            state = State.OPEN;
+            openedAt = now;
+            probeInFlight = false;
+        }
+    }
+}
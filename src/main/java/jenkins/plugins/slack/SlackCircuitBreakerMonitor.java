@@ -0,0 +1,30 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.model.AdministrativeMonitor;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Tells administrators which Slack team domains are currently failing fast because their circuit is open.
+ */
+@Extension
+public class SlackCircuitBreakerMonitor extends AdministrativeMonitor {
+
+    @Override
+    public boolean isActivated() {
+        return !getOpenCircuits().isEmpty();
+    }
+
+    public Map<String, SlackCircuitBreaker.State> getOpenCircuits() {
+        Map<String, SlackCircuitBreaker.State> states = SlackCircuitBreaker.getStates();
+        Iterator<SlackCircuitBreaker.State> iterator = states.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == SlackCircuitBreaker.State.CLOSED) {
+                iterator.remove();
+            }
+        }
+        return states;
+    }
+}
@@ -0,0 +1,131 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.ProxyConfiguration;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import jenkins.model.Jenkins;
+import org.apache.commons.httpclient.Credentials;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.auth.BasicScheme;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Immutable snapshot of everything a post needs from the Jenkins configuration: the proxy, its credentials and
+ * the timeouts from the global Slack configuration. It is resolved once and only rebuilt after the proxy or the
+ * global Slack configuration has been saved, so posting does not look anything up.
+ */
+final class SlackClientConfiguration {
+
+    private static final Logger logger = Logger.getLogger(SlackClientConfiguration.class.getName());
+
+    private static volatile SlackClientConfiguration current;
+
+    /** What the snapshot was built from, to notice the proxy being removed, which is not reported as a save. */
+    private final ProxyConfiguration proxy;
+    /** Shared between clients: HttpClient clones it before adding the target host. Must not be modified. */
+    private final HostConfiguration hostConfiguration;
+    private final Credentials proxyCredentials;
+    /** The same proxy for {@link UrlConnectionTransport}. */
+    private final Proxy urlConnectionProxy;
+    private final String proxyAuthorization;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final long notificationTimeoutNanos;
+
+    private SlackClientConfiguration(ProxyConfiguration proxy, SlackNotifier.DescriptorImpl config) {
+        this.proxy = proxy;
+        this.hostConfiguration = new HostConfiguration();
+        UsernamePasswordCredentials credentials = null;
+        if (proxy != null) {
+            hostConfiguration.setProxy(proxy.name, proxy.port);
+            this.urlConnectionProxy = new Proxy(Proxy.Type.HTTP,
+                    InetSocketAddress.createUnresolved(proxy.name, proxy.port));
+            String username = proxy.getUserName();
+            // Consider it to be passed if username specified. Sufficient?
+            if (username != null && !"".equals(username.trim())) {
+                logger.info("Using proxy authentication (user=" + username + ")");
+                // http://hc.apache.org/httpclient-3.x/authentication.html#Proxy_Authentication
+                credentials = new UsernamePasswordCredentials(username, proxy.getPassword());
+            }
+        } else {
+            this.urlConnectionProxy = Proxy.NO_PROXY;
+        }
+        this.proxyCredentials = credentials;
+        this.proxyAuthorization = credentials != null ? BasicScheme.authenticate(credentials, "UTF-8") : null;
+        this.connectTimeoutMillis = (int) TimeUnit.SECONDS.toMillis(config != null ? config.getConnectTimeoutSeconds()
+                : SlackNotifier.DescriptorImpl.DEFAULT_CONNECT_TIMEOUT_SECONDS);
+        this.readTimeoutMillis = (int) TimeUnit.SECONDS.toMillis(config != null ? config.getReadTimeoutSeconds()
+                : SlackNotifier.DescriptorImpl.DEFAULT_READ_TIMEOUT_SECONDS);
+        this.notificationTimeoutNanos = TimeUnit.SECONDS.toNanos(config != null
+                ? config.getNotificationTimeoutSeconds()
+                : SlackNotifier.DescriptorImpl.DEFAULT_NOTIFICATION_TIMEOUT_SECONDS);
+        SlackConnectionPool.setConnectTimeout(connectTimeoutMillis);
+    }
+
+    static SlackClientConfiguration get() {
+        SlackClientConfiguration configuration = current;
+        Jenkins jenkins = Jenkins.getInstance();
+        ProxyConfiguration proxy = jenkins != null ? jenkins.proxy : null;
+        if (configuration == null || configuration.proxy != proxy) {
+            configuration = new SlackClientConfiguration(proxy, SlackNotifier.globalConfig());
+            current = configuration;
+        }
+        return configuration;
+    }
+
+    static void invalidate() {
+        current = null;
+    }
+
+    /**
+     * Points the client at the proxy, if any. Cheap enough to do for every post.
+     */
+    void configure(HttpClient client) {
+        client.setHostConfiguration(hostConfiguration);
+        if (proxyCredentials != null) {
+            client.getState().setProxyCredentials(AuthScope.ANY, proxyCredentials);
+        }
+    }
+
+    Proxy getProxy() {
+        return urlConnectionProxy;
+    }
+
+    /**
+     * @return the {@code Proxy-Authorization} header value for {@link UrlConnectionTransport}, or null
+     */
+    String getProxyAuthorization() {
+        return proxyAuthorization;
+    }
+
+    int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    long getNotificationTimeoutNanos() {
+        return notificationTimeoutNanos;
+    }
+
+    @Extension
+    public static class Invalidator extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof ProxyConfiguration || o instanceof SlackNotifier.DescriptorImpl) {
+                invalidate();
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import jenkins.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects messages headed for the same room within the configured coalescing window and sends them as one
+ * post with an attachment per message, each keeping its own color. A batch is sent early once it holds as
+ * many attachments, or as many bytes, as one post may carry. With no window configured every message is
+ * posted on its own.
+ * <p>
+ * Only messages about the same build, or about no build at all, share a post, so that a message that cannot
+ * be delivered is still attributed to its own build and a build's posts keep their order.
+ */
+final class SlackCoalescer {
+
+    /** Slack renders at most this many attachments per message. */
+    static final int MAX_ATTACHMENTS = 20;
+
+    private static final SlackCoalescer INSTANCE = new SlackCoalescer();
+
+    private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<String, Batch>();
+
+    static SlackCoalescer get() {
+        return INSTANCE;
+    }
+
+    boolean isEnabled() {
+        return windowMillis() > 0;
+    }
+
+    ListenableFuture<RoomResult> submit(StandardSlackService service, String roomId, SlackAttachment attachment) {
+        long windowMillis = windowMillis();
+        if (windowMillis <= 0) {
+            return send(service, roomId, Collections.singletonList(attachment), service.getPriority(),
+                    service.orderingKey(roomId));
+        }
+        String key = service.getTeamDomain() + '/' + service.getToken() + '/' + roomId + '/'
+                + service.getOriginJob() + '#' + service.getOriginBuild();
+        while (true) {
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                Batch created = new Batch(key, service, roomId);
+                batch = batches.putIfAbsent(key, created);
+                if (batch == null) {
+                    batch = created;
+                    schedule(batch, windowMillis);
+                }
+            }
+            SettableFuture<RoomResult> result = batch.add(attachment, service.getPriority());
+            if (batch.takeSealed()) {
+                // outside the batch's lock, as the publisher may run the post on this thread
+                flushSoon(batch);
+            }
+            if (result != null) {
+                return result;
+            }
+            // the batch is full or already sent, start a new one
+            batches.remove(key, batch);
+        }
+    }
+
+    private void schedule(final Batch batch, long windowMillis) {
+        Timer.get().schedule(new Runnable() {
+            public void run() {
+                flush(batch);
+            }
+        }, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushSoon(final Batch batch) {
+        SlackExecutors.publisher().submit(new Runnable() {
+            public void run() {
+                flush(batch);
+            }
+        });
+    }
+
+    private void flush(Batch batch) {
+        batches.remove(batch.key, batch);
+        List<SlackAttachment> attachments = new ArrayList<SlackAttachment>();
+        final List<SettableFuture<RoomResult>> results = new ArrayList<SettableFuture<RoomResult>>();
+        if (!batch.close(attachments, results)) {
+            return;
+        }
+        ListenableFuture<RoomResult> sent = send(batch.service, batch.roomId, attachments, batch.getPriority(),
+                batch.service.orderingKey(batch.roomId));
+        Futures.addCallback(sent, new FutureCallback<RoomResult>() {
+            public void onSuccess(RoomResult result) {
+                for (SettableFuture<RoomResult> future : results) {
+                    future.set(result);
+                }
+            }
+
+            public void onFailure(Throwable t) {
+                for (SettableFuture<RoomResult> future : results) {
+                    future.setException(t);
+                }
+            }
+        });
+    }
+
+    private static ListenableFuture<RoomResult> send(final StandardSlackService service, final String roomId,
+                                                     final List<SlackAttachment> attachments,
+                                                     SlackPriority priority, String orderingKey) {
+        Callable<RoomResult> post = new Callable<RoomResult>() {
+            public RoomResult call() {
+                return service.publishToRoom(roomId, attachments);
+            }
+        };
+        try {
+            return SlackDispatcher.forTeam(service.getTeamDomain()).submit(priority, orderingKey, post);
+        } catch (RejectedExecutionException e) {
+            // the team is saturated: fail like an unreachable team, which the outbox retries later
+            return Futures.immediateFuture(RoomResult.failure(roomId, RoomResult.NO_STATUS, e.getMessage()));
+        }
+    }
+
+    private static long windowMillis() {
+        SlackNotifier.DescriptorImpl config = SlackNotifier.globalConfig();
+        return config == null ? 0 : TimeUnit.SECONDS.toMillis(config.getCoalesceWindowSeconds());
+    }
+
+    private final class Batch {
+        final String key;
+        final StandardSlackService service;
+        final String roomId;
+        private final List<SlackAttachment> attachments = new ArrayList<SlackAttachment>();
+        private final List<SettableFuture<RoomResult>> results = new ArrayList<SettableFuture<RoomResult>>();
+        private int bytes;
+        private SlackPriority priority = SlackPriority.LOW;
+        private boolean sealed;
+        /** Sealed for being full and not yet handed to {@link #flushSoon}. */
+        private boolean flushPending;
+        private boolean sent;
+
+        Batch(String key, StandardSlackService service, String roomId) {
+            this.key = key;
+            this.service = service;
+            this.roomId = roomId;
+        }
+
+        /**
+         * @return the future for this attachment, or null if the batch is full or has already been sent
+         */
+        synchronized SettableFuture<RoomResult> add(SlackAttachment attachment, SlackPriority attachmentPriority) {
+            if (sealed) {
+                return null;
+            }
+            String message = attachment.getMessage();
+            int size = message == null ? 0
+                    : SlackMessageSplitter.postedSize(message, 0, message.length(), Integer.MAX_VALUE);
+            if (!attachments.isEmpty() && bytes + size > SlackMessageSplitter.MAX_BYTES) {
+                // would make an oversize post: send what is there and start a new batch
+                seal();
+                return null;
+            }
+            SettableFuture<RoomResult> result = SettableFuture.create();
+            attachments.add(attachment);
+            results.add(result);
+            bytes += size;
+            if (attachmentPriority.isMoreUrgentThan(priority)) {
+                priority = attachmentPriority;
+            }
+            if (attachments.size() >= MAX_ATTACHMENTS) {
+                seal();
+            }
+            return result;
+        }
+
+        /**
+         * Full: send it now instead of waiting for the window to close, once the lock is released.
+         */
+        private void seal() {
+            sealed = true;
+            flushPending = true;
+        }
+
+        /**
+         * @return true once after the batch was sealed for being full, for the caller to flush it
+         */
+        synchronized boolean takeSealed() {
+            boolean pending = flushPending;
+            flushPending = false;
+            return pending;
+        }
+
+        /**
+         * The most urgent of its messages.
+         */
+        synchronized SlackPriority getPriority() {
+            return priority;
+        }
+
+        synchronized boolean close(List<SlackAttachment> attachmentsOut, List<SettableFuture<RoomResult>> resultsOut) {
+            if (sent) {
+                return false;
+            }
+            sent = true;
+            sealed = true;
+            attachmentsOut.addAll(attachments);
+            resultsOut.addAll(results);
+            return true;
+        }
+    }
+}
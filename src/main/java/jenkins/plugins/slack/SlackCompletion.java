@@ -0,0 +1,273 @@
+package jenkins.plugins.slack;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Cause;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import hudson.scm.ChangeLogSet.Entry;
+import hudson.tasks.test.AbstractTestResultAction;
+import hudson.util.LogTaskListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A completed build that Slack is to be notified of, created by {@link SlackListener} once it has decided from
+ * the build's result that a notification will go out, and notified later on {@link SlackExecutors#notifier()}.
+ * Only what is cheap to read is copied on the thread that completed the build; the environment, change set and
+ * test results are read by {@link #capture} on the notifier thread, after which the build is let go. The
+ * notifier is the one the project had at the time, even if it is reconfigured before the notification goes out.
+ * <p>
+ * Waiting completions are notified most urgent first, and in the order they completed within a
+ * {@link SlackPriority}.
+ */
+final class SlackCompletion implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(SlackCompletion.class.getName());
+
+    private static final AtomicLong sequence = new AtomicLong();
+
+    /** Orders the notifier's queue. */
+    static final Comparator<Runnable> URGENCY = new Comparator<Runnable>() {
+        public int compare(Runnable a, Runnable b) {
+            SlackCompletion x = (SlackCompletion) a;
+            SlackCompletion y = (SlackCompletion) b;
+            if (x.priority != y.priority) {
+                return x.priority.ordinal() - y.priority.ordinal();
+            }
+            return x.order < y.order ? -1 : x.order == y.order ? 0 : 1;
+        }
+    };
+
+    private final SlackNotifier notifier;
+    private final SlackPriority priority;
+    private final long order = sequence.incrementAndGet();
+    private final AbstractProject<?, ?> project;
+    private final String fullDisplayName;
+    private final String displayName;
+    private final String url;
+    private final int number;
+    private final Result result;
+    private final long startTime;
+    private final long duration;
+    private final String durationString;
+    /** The job's failure streak as of this build, null if the message does not mention it. */
+    private final SlackFailureStreak failureStreak;
+
+    /** Null once captured. */
+    private AbstractBuild<?, ?> build;
+    private EnvVars environment;
+    /** -1 if the build has no test results or they are not shown. */
+    private int totalTests = -1;
+    private int failedTests;
+    private int skippedTests;
+    private List<String> commitMessages = Collections.emptyList();
+    private List<String> commitAuthors = Collections.emptyList();
+    /** The project of the build that triggered this one, null if it was not triggered by another build. */
+    private String upstreamProject;
+    private int upstreamBuild;
+
+    private SlackCompletion(AbstractBuild<?, ?> build, SlackNotifier notifier, Result previousResult) {
+        this.build = build;
+        this.notifier = notifier;
+        this.project = build.getProject();
+        this.fullDisplayName = build.getFullDisplayName();
+        this.displayName = build.getDisplayName();
+        this.url = build.getUrl();
+        this.number = build.getNumber();
+        this.result = build.getResult();
+        this.priority = SlackPriority.of(result);
+        this.startTime = build.getStartTimeInMillis();
+        this.duration = build.getDuration();
+        this.durationString = build.getDurationString();
+        // taken now, as later builds of the job may complete before this one is notified
+        this.failureStreak = mentionsFailureStreak(result, previousResult)
+                ? SlackFailureStreak.of(project, number, result, startTime, getEndTime()).snapshot() : null;
+    }
+
+    /**
+     * Only "Still Failing" and "Back to normal" messages say how long the job was failing.
+     */
+    private static boolean mentionsFailureStreak(Result result, Result previousResult) {
+        if (result == Result.FAILURE) {
+            return previousResult == Result.FAILURE;
+        }
+        return result == Result.SUCCESS && (previousResult == Result.FAILURE || previousResult == Result.UNSTABLE);
+    }
+
+    /**
+     * @return the notification of the completed build, null if the notifier does not notify builds that end
+     * the way it did
+     */
+    static SlackCompletion of(AbstractBuild<?, ?> build, SlackNotifier notifier) {
+        SlackResultHistory history = SlackResultHistory.of(build.getProject());
+        // a history loaded just now may not have seen the build yet
+        history.record(build.getNumber(), build.getResult(), SlackResultHistory.endTimeOf(build));
+        Result previousResult = history.previousNonAbortedResult(build.getNumber());
+        if (!ActiveNotifier.notifies(notifier, build.getResult(), previousResult)) {
+            return null;
+        }
+        return new SlackCompletion(build, notifier, previousResult);
+    }
+
+    /**
+     * Queues the notification. When the queue is full, the least urgent completion waiting is dropped to make
+     * room if it is less urgent than this one; otherwise this one is notified on the calling thread.
+     */
+    void submit() {
+        ThreadPoolExecutor executor = SlackExecutors.notifier();
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        if (queue.size() >= SlackExecutors.QUEUE_CAPACITY) {
+            SlackCompletion leastUrgent = null;
+            for (Runnable waiting : queue) {
+                if (leastUrgent == null || URGENCY.compare(waiting, leastUrgent) > 0) {
+                    leastUrgent = (SlackCompletion) waiting;
+                }
+            }
+            if (leastUrgent == null || !priority.isMoreUrgentThan(leastUrgent.priority)
+                    || !queue.remove(leastUrgent)) {
+                logger.fine("Too many builds waiting to be notified, notifying Slack of " + fullDisplayName
+                        + " right away");
+                run();
+                return;
+            }
+            logger.warning("Too many builds waiting to be notified, not notifying Slack of "
+                    + leastUrgent.fullDisplayName + " to make room for " + fullDisplayName);
+        }
+        executor.execute(this);
+    }
+
+    public void run() {
+        try {
+            SlackFailureStreak.saveIfTracked(project);
+            // the build's log is closed by now
+            TaskListener listener = new LogTaskListener(logger, Level.INFO);
+            capture(listener);
+            new ActiveNotifier(notifier, listener).completed(this);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Unable to notify Slack of " + fullDisplayName, e);
+        }
+    }
+
+    /**
+     * Reads what the notification needs from the build beyond what was copied when it completed. This runs
+     * every EnvironmentContributor and may load the change set, so it is not done on the thread that completed
+     * the build. The change set and test results are only read when the notifier shows them.
+     */
+    void capture(TaskListener listener) {
+        if (build == null) {
+            return;
+        }
+        environment = SlackNotifier.environmentOf(build, listener);
+
+        AbstractTestResultAction<?> tests = notifier.includeTestSummary()
+                ? build.getAction(AbstractTestResultAction.class) : null;
+        if (tests != null) {
+            totalTests = tests.getTotalCount();
+            failedTests = tests.getFailCount();
+            skippedTests = tests.getSkipCount();
+        }
+
+        if (notifier.getCommitInfoChoice().showAnything()) {
+            List<String> messages = new ArrayList<String>();
+            List<String> authors = new ArrayList<String>();
+            for (Object o : build.getChangeSet().getItems()) {
+                Entry entry = (Entry) o;
+                messages.add(entry.getMsg());
+                authors.add(entry.getAuthor().getDisplayName());
+            }
+            commitMessages = Collections.unmodifiableList(messages);
+            commitAuthors = Collections.unmodifiableList(authors);
+
+            Cause.UpstreamCause cause = (Cause.UpstreamCause) build.getCause(Cause.UpstreamCause.class);
+            upstreamProject = cause != null ? cause.getUpstreamProject() : null;
+            upstreamBuild = cause != null ? cause.getUpstreamBuild() : 0;
+        }
+        build = null;
+    }
+
+    AbstractProject<?, ?> getProject() {
+        return project;
+    }
+
+    String getFullDisplayName() {
+        return fullDisplayName;
+    }
+
+    String getDisplayName() {
+        return displayName;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    int getNumber() {
+        return number;
+    }
+
+    Result getResult() {
+        return result;
+    }
+
+    long getStartTime() {
+        return startTime;
+    }
+
+    long getEndTime() {
+        return startTime + duration;
+    }
+
+    String getDurationString() {
+        return durationString;
+    }
+
+    SlackFailureStreak getFailureStreak() {
+        return failureStreak;
+    }
+
+    EnvVars getEnvironment() {
+        return environment;
+    }
+
+    boolean hasTests() {
+        return totalTests >= 0;
+    }
+
+    int getTotalTests() {
+        return totalTests;
+    }
+
+    int getFailedTests() {
+        return failedTests;
+    }
+
+    int getSkippedTests() {
+        return skippedTests;
+    }
+
+    List<String> getCommitMessages() {
+        return commitMessages;
+    }
+
+    List<String> getCommitAuthors() {
+        return commitAuthors;
+    }
+
+    String getUpstreamProject() {
+        return upstreamProject;
+    }
+
+    int getUpstreamBuild() {
+        return upstreamBuild;
+    }
+}
@@ -0,0 +1,135 @@
+package jenkins.plugins.slack;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Adaptive limit on the number of posts in flight per Slack team domain, following AIMD: every post that comes
+ * back in good time raises the limit by {@code 1/limit}, so by about one per round trip, and a throttled, failed
+ * or unusually slow post cuts it by {@link #BACKOFF_RATIO}. Cuts happen at most once per round trip, so a burst
+ * of failures from posts that were all sent at the same limit only counts once. "Unusually slow" means more than
+ * {@link #LATENCY_TOLERANCE} times the team's long-term average round trip.
+ */
+public final class SlackConcurrencyLimiter {
+
+    private static final Logger logger = Logger.getLogger(SlackConcurrencyLimiter.class.getName());
+
+    static final int INITIAL_LIMIT =
+            Integer.getInteger(SlackConcurrencyLimiter.class.getName() + ".initialLimit", 4);
+    static final int MAX_LIMIT = Integer.getInteger(SlackConcurrencyLimiter.class.getName() + ".maxLimit",
+            SlackConnectionPool.MAX_CONNECTIONS_PER_HOST);
+    static final double BACKOFF_RATIO = 0.75;
+    static final double LATENCY_TOLERANCE = 2.0;
+    /** Weight of a new round trip in the long-term average. */
+    private static final double RTT_SMOOTHING = 0.05;
+
+    private static final ConcurrentMap<String, SlackConcurrencyLimiter> limiters =
+            new ConcurrentHashMap<String, SlackConcurrencyLimiter>();
+
+    private final String teamDomain;
+    private final int maxLimit;
+    private double limit;
+    private int inFlight;
+    private double averageRttNanos;
+    private long lastDecrease;
+
+    SlackConcurrencyLimiter(String teamDomain, int initialLimit, int maxLimit) {
+        this.teamDomain = teamDomain;
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+    }
+
+    public static SlackConcurrencyLimiter forTeam(String teamDomain) {
+        String key = String.valueOf(teamDomain);
+        SlackConcurrencyLimiter limiter = limiters.get(key);
+        if (limiter == null) {
+            SlackConcurrencyLimiter created = new SlackConcurrencyLimiter(teamDomain, INITIAL_LIMIT, MAX_LIMIT);
+            limiter = limiters.putIfAbsent(key, created);
+            if (limiter == null) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * Waits until there is room for another post.
+     *
+     * @return false if the deadline passed first or the thread was interrupted
+     */
+    synchronized boolean acquire(long deadline) {
+        while (inFlight >= (int) limit) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Ends a post started after {@link #acquire} and adjusts the limit to how it went.
+     */
+    void release(RoomResult result, long rttNanos) {
+        release(result, rttNanos, System.nanoTime());
+    }
+
+    synchronized void release(RoomResult result, long rttNanos, long now) {
+        inFlight--;
+        notifyAll();
+        if (result.isTimedOut()) {
+            // the notification ran out of time before posting, which says nothing about Slack
+            return;
+        }
+        if (result.isRetryable()) {
+            decrease(now, result.toString());
+        } else if (result.isSuccess()) {
+            if (averageRttNanos > 0 && rttNanos > LATENCY_TOLERANCE * averageRttNanos) {
+                decrease(now, "round trip of " + TimeUnit.NANOSECONDS.toMillis(rttNanos) + "ms");
+            } else if (limit < maxLimit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            averageRttNanos = averageRttNanos == 0 ? rttNanos
+                    : averageRttNanos + RTT_SMOOTHING * (rttNanos - averageRttNanos);
+        }
+    }
+
+    private void decrease(long now, String reason) {
+        if (lastDecrease != 0 && now - lastDecrease < averageRttNanos) {
+            return;
+        }
+        lastDecrease = now;
+        double decreased = Math.max(1, limit * BACKOFF_RATIO);
+        if ((int) decreased < (int) limit && logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Lowering concurrency for Slack team {0} to {1} after {2}",
+                    new Object[]{teamDomain, (int) decreased, reason});
+        }
+        limit = decreased;
+    }
+
+    /**
+     * The number of posts currently allowed in flight for the team, or the initial limit if it has not posted.
+     */
+    static int limitFor(String teamDomain) {
+        SlackConcurrencyLimiter limiter = limiters.get(String.valueOf(teamDomain));
+        return limiter != null ? limiter.getLimit() : Math.min(INITIAL_LIMIT, Math.max(1, MAX_LIMIT));
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
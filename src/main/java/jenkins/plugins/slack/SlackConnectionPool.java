@@ -0,0 +1,85 @@
+package jenkins.plugins.slack;
+
+import hudson.init.Terminator;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+import java.util.logging.Logger;
+
+/**
+ * Plugin-wide pool of keep-alive HTTP connections, shared by every {@link StandardSlackService}.
+ * Connections are pooled per host, bounded in total and per host, and evicted once idle.
+ */
+public final class SlackConnectionPool {
+
+    private static final Logger logger = Logger.getLogger(SlackConnectionPool.class.getName());
+
+    static final int MAX_TOTAL_CONNECTIONS =
+            Integer.getInteger(SlackConnectionPool.class.getName() + ".maxTotalConnections", 40);
+    static final int MAX_CONNECTIONS_PER_HOST =
+            Integer.getInteger(SlackConnectionPool.class.getName() + ".maxConnectionsPerHost", 10);
+    static final long IDLE_TIMEOUT_MILLIS =
+            Long.getLong(SlackConnectionPool.class.getName() + ".idleTimeoutMillis", 60000L);
+    private static final long IDLE_CHECK_INTERVAL_MILLIS = 10000L;
+
+    private static MultiThreadedHttpConnectionManager connectionManager;
+    private static int connectTimeoutMillis = -1;
+    private static IdleConnectionTimeoutThread idleConnectionTimeoutThread;
+
+    private SlackConnectionPool() {
+    }
+
+    /**
+     * Returns a lightweight client backed by the shared connection pool.
+     * Per-client state such as proxy settings and credentials is not shared.
+     */
+    public static HttpClient newHttpClient() {
+        return new HttpClient(getConnectionManager());
+    }
+
+    /**
+     * Sets how long opening a new connection may take. Applies to every connection the pool opens from now on.
+     */
+    static synchronized void setConnectTimeout(int millis) {
+        if (millis != connectTimeoutMillis) {
+            getConnectionManager().getParams().setConnectionTimeout(millis);
+            connectTimeoutMillis = millis;
+        }
+    }
+
+    static synchronized HttpConnectionManager getConnectionManager() {
+        if (connectionManager == null) {
+            connectionManager = new MultiThreadedHttpConnectionManager();
+            HttpConnectionManagerParams params = connectionManager.getParams();
+            params.setMaxTotalConnections(MAX_TOTAL_CONNECTIONS);
+            params.setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS_PER_HOST);
+            params.setStaleCheckingEnabled(true);
+
+            idleConnectionTimeoutThread = new IdleConnectionTimeoutThread();
+            idleConnectionTimeoutThread.setName("Slack idle connection evictor");
+            idleConnectionTimeoutThread.setTimeoutInterval(IDLE_CHECK_INTERVAL_MILLIS);
+            idleConnectionTimeoutThread.setConnectionTimeout(IDLE_TIMEOUT_MILLIS);
+            idleConnectionTimeoutThread.addConnectionManager(connectionManager);
+            idleConnectionTimeoutThread.start();
+            logger.fine("Created Slack connection pool (total=" + MAX_TOTAL_CONNECTIONS
+                    + ", perHost=" + MAX_CONNECTIONS_PER_HOST + ")");
+        }
+        return connectionManager;
+    }
+
+    @Terminator
+    public static synchronized void shutdown() {
+        if (idleConnectionTimeoutThread != null) {
+            idleConnectionTimeoutThread.shutdown();
+            idleConnectionTimeoutThread = null;
+        }
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+            connectionManager = null;
+            connectTimeoutMillis = -1;
+        }
+    }
+}
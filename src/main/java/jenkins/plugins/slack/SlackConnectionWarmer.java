@@ -0,0 +1,165 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.AbstractProject;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a connection open to every configured team host, so that a notification does not have to wait for DNS,
+ * TCP, TLS and the proxy tunnel. Hosts are warmed when Jenkins starts and whenever the global Slack configuration
+ * is saved. After that, a bodiless request is sent to each host that has not posted anything since the last
+ * round, often enough for its connection to outlive {@link SlackConnectionPool#IDLE_TIMEOUT_MILLIS}.
+ */
+public final class SlackConnectionWarmer {
+
+    private static final Logger logger = Logger.getLogger(SlackConnectionWarmer.class.getName());
+
+    /** How often idle hosts get a keep-alive; 0 only warms at startup and on save. */
+    static final long KEEP_ALIVE_MILLIS = Long.getLong(SlackConnectionWarmer.class.getName() + ".keepAliveMillis",
+            SlackConnectionPool.IDLE_TIMEOUT_MILLIS * 3 / 4);
+
+    private static volatile Set<String> teamDomains = Collections.emptySet();
+    /** Posts attempted per team as of the last keep-alive round. */
+    private static final ConcurrentMap<String, Long> lastAttempts = new ConcurrentHashMap<String, Long>();
+    private static ScheduledFuture<?> keepAliveTask;
+
+    private SlackConnectionWarmer() {
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static synchronized void start() {
+        if (keepAliveTask != null || Jenkins.getInstance() == null) {
+            return;
+        }
+        refreshLater();
+        if (KEEP_ALIVE_MILLIS > 0) {
+            keepAliveTask = Timer.get().scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    keepAlive();
+                }
+            }, KEEP_ALIVE_MILLIS, KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Terminator
+    public static synchronized void stop() {
+        if (keepAliveTask != null) {
+            keepAliveTask.cancel(false);
+            keepAliveTask = null;
+        }
+        teamDomains = Collections.emptySet();
+        lastAttempts.clear();
+    }
+
+    static void refreshLater() {
+        Timer.get().submit(new Runnable() {
+            public void run() {
+                refresh();
+            }
+        });
+    }
+
+    /**
+     * Looks up the configured team domains again and warms all of them.
+     */
+    static void refresh() {
+        Set<String> domains = findTeamDomains();
+        teamDomains = domains;
+        lastAttempts.keySet().retainAll(domains);
+        for (String teamDomain : domains) {
+            warm(teamDomain);
+        }
+    }
+
+    static void keepAlive() {
+        for (String teamDomain : teamDomains) {
+            if (isIdle(teamDomain)) {
+                warm(teamDomain);
+            }
+        }
+    }
+
+    /**
+     * @return whether nothing has been posted to the team since the last time this was asked; a connection that
+     * was just used needs no keep-alive
+     */
+    static boolean isIdle(String teamDomain) {
+        long attempts = SlackMetrics.forTeam(teamDomain).getAttempts();
+        Long previous = lastAttempts.put(teamDomain, attempts);
+        return previous == null || previous == attempts;
+    }
+
+    static boolean warm(String teamDomain) {
+        return warm(new StandardSlackService(teamDomain, "", ""));
+    }
+
+    static boolean warm(StandardSlackService service) {
+        try {
+            int status = service.warm();
+            logger.log(Level.FINE, "Warmed connection to Slack team {0} (HTTP {1})",
+                    new Object[]{service.getTeamDomain(), status});
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to warm connection to Slack team " + service.getTeamDomain(), e);
+            return false;
+        }
+    }
+
+    /**
+     * The global team domain and those set on jobs. Domains that depend on build variables cannot be known in
+     * advance and are left out.
+     */
+    private static Set<String> findTeamDomains() {
+        Set<String> domains = new TreeSet<String>();
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return domains;
+        }
+        SlackNotifier.DescriptorImpl config = SlackNotifier.globalConfig();
+        if (config != null) {
+            addTeamDomain(domains, config.getTeamDomain());
+        }
+        for (AbstractProject<?, ?> project : jenkins.getAllItems(AbstractProject.class)) {
+            SlackNotifier notifier = project.getPublishersList().get(SlackNotifier.class);
+            if (notifier != null) {
+                addTeamDomain(domains, notifier.getTeamDomain());
+            }
+        }
+        return domains;
+    }
+
+    private static void addTeamDomain(Set<String> domains, String teamDomain) {
+        if (StringUtils.isNotBlank(teamDomain) && !teamDomain.contains("$")) {
+            domains.add(teamDomain.trim());
+        }
+    }
+
+    @Extension
+    public static class ConfigurationListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SlackNotifier.DescriptorImpl) {
+                refreshLater();
+            }
+        }
+    }
+}
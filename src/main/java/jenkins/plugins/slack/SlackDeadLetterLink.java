@@ -0,0 +1,55 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * "Manage Jenkins" page listing undelivered Slack notifications, from where they can be replayed or discarded.
+ */
+@Extension
+public class SlackDeadLetterLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "notepad.png";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "slack-dead-letters";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.SlackDeadLetterLinkDisplayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.SlackDeadLetterLinkDescription();
+    }
+
+    public SlackDeadLetters getDeadLetters() {
+        return SlackDeadLetters.get();
+    }
+
+    @RequirePOST
+    public HttpResponse doReplay(@QueryParameter String roomId) {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        SlackDeadLetters.get().replay(StringUtils.trimToNull(roomId));
+        return HttpResponses.redirectToDot();
+    }
+
+    @RequirePOST
+    public HttpResponse doDiscard(@QueryParameter String roomId) {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        SlackDeadLetters.get().discard(StringUtils.trimToNull(roomId));
+        return HttpResponses.redirectToDot();
+    }
+}
@@ -0,0 +1,214 @@
+package jenkins.plugins.slack;
+
+import hudson.BulkChange;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded store of build notifications that could not be delivered, kept in
+ * {@code $JENKINS_HOME/jenkins.plugins.slack.SlackDeadLetters.xml}. Once it is full the oldest are dropped.
+ * Replaying sends them again one channel at a time, in the order they failed, through the same rate limiter
+ * as live notifications, so a large backlog drains at the pace Slack accepts.
+ */
+public final class SlackDeadLetters implements Saveable {
+
+    private static final Logger logger = Logger.getLogger(SlackDeadLetters.class.getName());
+
+    static final int CAPACITY = Integer.getInteger(SlackDeadLetters.class.getName() + ".capacity", 10000);
+    private static final long SAVE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static SlackDeadLetters instance;
+
+    private final LinkedList<DeadLetter> letters = new LinkedList<DeadLetter>();
+    private long nextId;
+    private final transient int capacity;
+    private final transient XmlFile file;
+    private transient boolean saveScheduled;
+
+    SlackDeadLetters(int capacity, XmlFile file) {
+        this.capacity = capacity;
+        this.file = file;
+    }
+
+    public static synchronized SlackDeadLetters get() {
+        if (instance == null) {
+            Jenkins jenkins = Jenkins.getInstance();
+            XmlFile file = jenkins == null ? null : new XmlFile(Jenkins.XSTREAM,
+                    new File(jenkins.getRootDir(), SlackDeadLetters.class.getName() + ".xml"));
+            SlackDeadLetters store = new SlackDeadLetters(CAPACITY, file);
+            if (file != null && file.exists()) {
+                try {
+                    file.unmarshal(store);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Unable to load Slack dead letters from " + file, e);
+                }
+            }
+            instance = store;
+        }
+        return instance;
+    }
+
+    void add(String teamDomain, String token, String roomId, String message, String color, String error,
+             String job, int build) {
+        add(new DeadLetter(0, System.currentTimeMillis(), teamDomain, token, roomId, message, color, error,
+                job, build));
+    }
+
+    private void add(DeadLetter letter) {
+        synchronized (this) {
+            letters.addLast(letter.withId(nextId++));
+            while (letters.size() > capacity) {
+                DeadLetter dropped = letters.removeFirst();
+                logger.warning("Slack dead letter store is full, dropping notification to " + dropped.getRoomId()
+                        + " on " + dropped.getTeamDomain() + " from " + dropped.getFailedAt());
+            }
+        }
+        scheduleSave();
+    }
+
+    public synchronized List<DeadLetter> getLetters() {
+        return new ArrayList<DeadLetter>(letters);
+    }
+
+    public synchronized int size() {
+        return letters.size();
+    }
+
+    /**
+     * Removes the letters for {@code roomId}, or all of them if null, and sends them again in the background.
+     *
+     * @return how many are being replayed
+     */
+    public int replay(String roomId) {
+        Map<String, List<DeadLetter>> byChannel = new LinkedHashMap<String, List<DeadLetter>>();
+        for (DeadLetter letter : take(roomId)) {
+            String channel = letter.getTeamDomain() + '/' + letter.getToken() + '/' + letter.getRoomId();
+            List<DeadLetter> channelLetters = byChannel.get(channel);
+            if (channelLetters == null) {
+                channelLetters = new ArrayList<DeadLetter>();
+                byChannel.put(channel, channelLetters);
+            }
+            channelLetters.add(letter);
+        }
+        int count = 0;
+        for (final List<DeadLetter> channelLetters : byChannel.values()) {
+            count += channelLetters.size();
+            SlackExecutors.replayer().execute(new Runnable() {
+                public void run() {
+                    replayChannel(channelLetters);
+                }
+            });
+        }
+        if (count > 0) {
+            logger.info("Replaying " + count + " Slack dead letter(s) to " + byChannel.size() + " channel(s)");
+        }
+        return count;
+    }
+
+    /**
+     * Removes the letters for {@code roomId}, or all of them if null, without sending them.
+     *
+     * @return how many were discarded
+     */
+    public int discard(String roomId) {
+        return take(roomId).size();
+    }
+
+    private List<DeadLetter> take(String roomId) {
+        List<DeadLetter> taken = new ArrayList<DeadLetter>();
+        synchronized (this) {
+            Iterator<DeadLetter> iterator = letters.iterator();
+            while (iterator.hasNext()) {
+                DeadLetter letter = iterator.next();
+                if (roomId == null || roomId.equals(letter.getRoomId())) {
+                    taken.add(letter);
+                    iterator.remove();
+                }
+            }
+        }
+        if (!taken.isEmpty()) {
+            scheduleSave();
+        }
+        return taken;
+    }
+
+    /**
+     * Sends one channel's letters in order. At the first failure that one and the rest go back into the store.
+     * Letters the channel was sent within the deduplication window, for instance because the notification got
+     * through after all, are skipped.
+     */
+    private void replayChannel(List<DeadLetter> channelLetters) {
+        long dedupWindowNanos = SlackDeduplicator.windowNanos();
+        for (int i = 0; i < channelLetters.size(); i++) {
+            DeadLetter letter = channelLetters.get(i);
+            long fingerprint = SlackDeduplicator.fingerprint(letter.getTeamDomain(), letter.getToken(),
+                    letter.getRoomId(), letter.getMessage(), letter.getColor());
+            if (dedupWindowNanos > 0
+                    && !SlackDeduplicator.get().firstSeen(fingerprint, System.nanoTime(), dedupWindowNanos)) {
+                logger.fine("Not replaying duplicate Slack message to " + letter.getRoomId());
+                continue;
+            }
+            StandardSlackService service = new StandardSlackService(letter.getTeamDomain(), letter.getToken(),
+                    letter.getRoomId());
+            RoomResult result = service.publishToRoom(letter.getRoomId(),
+                    Collections.singletonList(new SlackAttachment(letter.getMessage(), letter.getColor())));
+            if (!result.isSuccess()) {
+                SlackDeduplicator.get().forget(fingerprint);
+                logger.warning("Replay to " + letter.getRoomId() + " on " + letter.getTeamDomain()
+                        + " failed, keeping " + (channelLetters.size() - i) + " dead letter(s): " + result);
+                add(new DeadLetter(0, System.currentTimeMillis(), letter.getTeamDomain(), letter.getToken(),
+                        letter.getRoomId(), letter.getMessage(), letter.getColor(), result.toString(),
+                        letter.getJob(), letter.getBuild()));
+                for (DeadLetter rest : channelLetters.subList(i + 1, channelLetters.size())) {
+                    add(rest);
+                }
+                return;
+            }
+        }
+    }
+
+    private void scheduleSave() {
+        synchronized (this) {
+            if (file == null || saveScheduled) {
+                return;
+            }
+            saveScheduled = true;
+        }
+        Timer.get().schedule(new Runnable() {
+            public void run() {
+                synchronized (SlackDeadLetters.this) {
+                    saveScheduled = false;
+                }
+                try {
+                    save();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Unable to save Slack dead letters", e);
+                }
+            }
+        }, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void save() throws IOException {
+        if (file == null || BulkChange.contains(this)) {
+            return;
+        }
+        file.write(this);
+        SaveableListener.fireOnChange(this, file);
+    }
+}
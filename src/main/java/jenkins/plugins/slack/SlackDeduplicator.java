@@ -0,0 +1,136 @@
+package jenkins.plugins.slack;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Remembers which notifications went to which channel during the configured deduplication window, so that the
+ * same notification is not posted to the same channel twice in a row: build notifications sent by several
+ * notifiers, dead letters replayed after the notification got through some other way, and pipeline steps run
+ * again by a retry of the same build. Messages are remembered by a 64-bit FNV-1a hash of team, token, channel,
+ * color and text, and for pipeline steps the build, together with when they expire. Connection tests are not
+ * deduplicated, and neither is a step in another build, so that sending something again on purpose still works.
+ * <p>
+ * The set is bounded: once it is full, expired entries are swept out, and if that is not enough arbitrary ones
+ * are dropped, which only means some duplicates get through.
+ */
+final class SlackDeduplicator {
+
+    static final int CAPACITY = Integer.getInteger(SlackDeduplicator.class.getName() + ".capacity", 10000);
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final SlackDeduplicator INSTANCE = new SlackDeduplicator(CAPACITY);
+
+    private final int capacity;
+    private final ConcurrentMap<Long, Long> expiries = new ConcurrentHashMap<Long, Long>();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+
+    SlackDeduplicator(int capacity) {
+        this.capacity = capacity;
+    }
+
+    static SlackDeduplicator get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the configured window, 0 if deduplication is off
+     */
+    static long windowNanos() {
+        SlackNotifier.DescriptorImpl config = SlackNotifier.globalConfig();
+        return config == null ? 0 : TimeUnit.SECONDS.toNanos(config.getDedupWindowSeconds());
+    }
+
+    /**
+     * @return true if the fingerprint has not been seen within the window, in which case it is remembered
+     * until {@code now + windowNanos}
+     */
+    boolean firstSeen(long fingerprint, long now, long windowNanos) {
+        Long key = fingerprint;
+        Long expiry = now + windowNanos;
+        while (true) {
+            Long previous = expiries.putIfAbsent(key, expiry);
+            if (previous == null) {
+                trim(now);
+                return true;
+            }
+            if (previous - now > 0) {
+                return false;
+            }
+            if (expiries.replace(key, previous, expiry)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Lets the message through again, for when it could not be delivered.
+     */
+    void forget(long fingerprint) {
+        expiries.remove(fingerprint);
+    }
+
+    int size() {
+        return expiries.size();
+    }
+
+    private void trim(long now) {
+        if (expiries.size() <= capacity || !trimming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (Iterator<Long> it = expiries.values().iterator(); it.hasNext(); ) {
+                if (it.next() - now <= 0) {
+                    it.remove();
+                }
+            }
+            if (expiries.size() > capacity) {
+                // still full of live entries: make some room at once instead of trimming on every message
+                int target = capacity - capacity / 4;
+                for (Iterator<Long> it = expiries.keySet().iterator(); expiries.size() > target && it.hasNext(); ) {
+                    it.next();
+                    it.remove();
+                }
+            }
+        } finally {
+            trimming.set(false);
+        }
+    }
+
+    static long fingerprint(String teamDomain, String token, String roomId, String message, String color) {
+        return fingerprint(null, teamDomain, token, roomId, message, color);
+    }
+
+    /**
+     * @param scope what else the message has to have in common with an earlier one to be a duplicate, or null
+     */
+    static long fingerprint(String scope, String teamDomain, String token, String roomId, String message,
+                            String color) {
+        long hash = FNV_OFFSET_BASIS;
+        if (scope != null) {
+            hash = hash(hash, scope);
+        }
+        hash = hash(hash, teamDomain);
+        hash = hash(hash, token);
+        hash = hash(hash, roomId);
+        hash = hash(hash, color);
+        return hash(hash, message);
+    }
+
+    private static long hash(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+                hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+            }
+        }
+        // separator, so that ("ab", "c") and ("a", "bc") differ
+        return (hash ^ 0xff) * FNV_PRIME;
+    }
+}
@@ -0,0 +1,273 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orders asynchronous posts by {@link SlackPriority}, so that a failure alert is not stuck behind a backlog of
+ * success messages. Posts sharing an ordering key, the channel and build they are about, form a sequence that
+ * runs one post at a time in submission order. A sequence waits in the lane of its most urgent post, which
+ * lets a failure alert take earlier messages about the same build along with it. Posts that have waited longer
+ * than {@link #MAX_WAIT_MILLIS} in a lower lane are taken before the upper lanes, so that lower lanes still
+ * drain while failures keep coming.
+ * <p>
+ * There is one dispatcher per team domain, running its posts on the team's bulkhead from
+ * {@link SlackExecutors#forTeam}. Each sequence that becomes ready hands the bulkhead one task, and that task
+ * runs whatever is most urgent when it starts, not necessarily the post that scheduled it. At most
+ * {@link SlackExecutors#TEAM_QUEUE_CAPACITY} posts may wait; beyond that the team is saturated and further
+ * posts are refused rather than left to hold up their callers.
+ */
+final class SlackDispatcher {
+
+    static final long MAX_WAIT_MILLIS = Long.getLong(SlackDispatcher.class.getName() + ".maxWaitMillis", 10000L);
+
+    private static final ConcurrentMap<String, SlackDispatcher> dispatchers =
+            new ConcurrentHashMap<String, SlackDispatcher>();
+
+    private final String teamDomain;
+    /** Null for the team's bulkhead, which may be recreated. */
+    private final Executor executor;
+    private final int capacity;
+    private final long maxWaitNanos;
+    private final Deque<Sequence>[] lanes;
+    private final Map<String, Sequence> sequences = new HashMap<String, Sequence>();
+    private int queued;
+    private long rejected;
+
+    @SuppressWarnings("unchecked")
+    SlackDispatcher(String teamDomain, Executor executor, int capacity, long maxWaitMillis) {
+        this.teamDomain = teamDomain;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.lanes = new Deque[SlackPriority.values().length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ArrayDeque<Sequence>();
+        }
+    }
+
+    static SlackDispatcher forTeam(String teamDomain) {
+        String key = String.valueOf(teamDomain);
+        SlackDispatcher dispatcher = dispatchers.get(key);
+        if (dispatcher == null) {
+            SlackDispatcher created = new SlackDispatcher(teamDomain, null, SlackExecutors.TEAM_QUEUE_CAPACITY,
+                    MAX_WAIT_MILLIS);
+            dispatcher = dispatchers.putIfAbsent(key, created);
+            if (dispatcher == null) {
+                dispatcher = created;
+            }
+        }
+        return dispatcher;
+    }
+
+    /**
+     * @param orderingKey posts with the same key run one after the other in submission order; null for a post
+     *                    that does not need to wait for any other
+     * @throws RejectedExecutionException if the team already has as many posts waiting as it may
+     */
+    <T> ListenableFuture<T> submit(SlackPriority priority, String orderingKey, Callable<T> post) {
+        ListenableFutureTask<T> task = ListenableFutureTask.create(post);
+        boolean ready;
+        synchronized (this) {
+            if (queued >= capacity) {
+                rejected++;
+                throw new RejectedExecutionException("Slack team " + teamDomain + " already has " + queued
+                        + " posts waiting");
+            }
+            queued++;
+            Sequence sequence = orderingKey != null ? sequences.get(orderingKey) : null;
+            if (sequence == null) {
+                sequence = new Sequence(orderingKey);
+                if (orderingKey != null) {
+                    sequences.put(orderingKey, sequence);
+                }
+            }
+            ready = sequence.add(task, priority);
+        }
+        if (ready) {
+            schedule();
+        }
+        return task;
+    }
+
+    synchronized int getQueued() {
+        return queued;
+    }
+
+    synchronized long getRejected() {
+        return rejected;
+    }
+
+    static int queuedFor(String teamDomain) {
+        SlackDispatcher dispatcher = dispatchers.get(String.valueOf(teamDomain));
+        return dispatcher != null ? dispatcher.getQueued() : 0;
+    }
+
+    static long rejectedFor(String teamDomain) {
+        SlackDispatcher dispatcher = dispatchers.get(String.valueOf(teamDomain));
+        return dispatcher != null ? dispatcher.getRejected() : 0;
+    }
+
+    /**
+     * @return the number of posts waiting in each lane, most urgent first
+     */
+    synchronized int[] getQueueLengths() {
+        int[] lengths = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            for (Sequence sequence : lanes[i]) {
+                lengths[i] += sequence.tasks.size();
+            }
+        }
+        return lengths;
+    }
+
+    private void schedule() {
+        Runnable drain = new Runnable() {
+            public void run() {
+                runNext();
+            }
+        };
+        if (executor != null) {
+            executor.execute(drain);
+        } else {
+            SlackExecutors.forTeam(teamDomain).execute(drain);
+        }
+    }
+
+    private void runNext() {
+        Sequence sequence;
+        Runnable task;
+        synchronized (this) {
+            sequence = next(System.nanoTime());
+            if (sequence == null) {
+                return;
+            }
+            task = sequence.start();
+        }
+        try {
+            task.run();
+        } finally {
+            boolean ready;
+            synchronized (this) {
+                ready = sequence.finish();
+            }
+            if (ready) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * The sequence that waited the longest past the allowed wait in a lower lane, otherwise the head of the
+     * most urgent lane.
+     */
+    private Sequence next(long now) {
+        Deque<Sequence> overdue = null;
+        for (int i = 1; i < lanes.length; i++) {
+            Sequence head = lanes[i].peekFirst();
+            if (head != null && now - head.readySince > maxWaitNanos
+                    && (overdue == null || head.readySince - overdue.peekFirst().readySince < 0)) {
+                overdue = lanes[i];
+            }
+        }
+        if (overdue != null) {
+            return overdue.pollFirst();
+        }
+        for (Deque<Sequence> lane : lanes) {
+            if (!lane.isEmpty()) {
+                return lane.pollFirst();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Posts for one ordering key. Guarded by the dispatcher's lock.
+     */
+    private final class Sequence {
+        final String key;
+        final Deque<Runnable> tasks = new ArrayDeque<Runnable>();
+        final Deque<SlackPriority> priorities = new ArrayDeque<SlackPriority>();
+        SlackPriority lane;
+        long readySince;
+        boolean running;
+
+        Sequence(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return whether the sequence just became ready and needs a task to run it
+         */
+        boolean add(Runnable task, SlackPriority priority) {
+            tasks.addLast(task);
+            priorities.addLast(priority);
+            if (running) {
+                return false;
+            }
+            if (lane == null) {
+                enqueue(priority);
+                return true;
+            }
+            if (priority.isMoreUrgentThan(lane)) {
+                // take the earlier posts along into the more urgent lane, keeping their place in time
+                lanes[lane.ordinal()].remove(this);
+                lane = priority;
+                insertByAge(lanes[lane.ordinal()]);
+            }
+            return false;
+        }
+
+        Runnable start() {
+            lane = null;
+            running = true;
+            queued--;
+            priorities.removeFirst();
+            return tasks.removeFirst();
+        }
+
+        boolean finish() {
+            running = false;
+            if (tasks.isEmpty()) {
+                if (key != null) {
+                    sequences.remove(key);
+                }
+                return false;
+            }
+            SlackPriority mostUrgent = SlackPriority.LOW;
+            for (SlackPriority priority : priorities) {
+                if (priority.isMoreUrgentThan(mostUrgent)) {
+                    mostUrgent = priority;
+                }
+            }
+            enqueue(mostUrgent);
+            return true;
+        }
+
+        private void enqueue(SlackPriority priority) {
+            lane = priority;
+            readySince = System.nanoTime();
+            lanes[lane.ordinal()].addLast(this);
+        }
+
+        private void insertByAge(Deque<Sequence> target) {
+            Deque<Sequence> younger = new ArrayDeque<Sequence>();
+            while (!target.isEmpty() && target.peekLast().readySince - readySince > 0) {
+                younger.addFirst(target.pollLast());
+            }
+            target.addLast(this);
+            target.addAll(younger);
+        }
+    }
+}
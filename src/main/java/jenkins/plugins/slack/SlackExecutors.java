@@ -0,0 +1,126 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executors that perform Slack network I/O on behalf of asynchronous callers. Posts run on a bulkhead per team
+ * domain: a pool of its own whose queue is bounded by the team's {@link SlackDispatcher}, so a slow or
+ * misconfigured workspace only ties up its own threads. The plugin-wide publisher runs short hand-offs and
+ * the helpers of synchronous posts; when its queue is full the submitting thread runs the task itself, which
+ * applies back pressure instead of dropping notifications. Completed builds are turned into notifications on
+ * a pool of their own, off the thread that is finishing the build, failures ahead of successes.
+ */
+public final class SlackExecutors {
+
+    static final int THREADS = Integer.getInteger(SlackExecutors.class.getName() + ".threads", 8);
+    static final int QUEUE_CAPACITY = Integer.getInteger(SlackExecutors.class.getName() + ".queueCapacity", 1000);
+    static final int TEAM_THREADS = Integer.getInteger(SlackExecutors.class.getName() + ".teamThreads", THREADS);
+    static final int TEAM_QUEUE_CAPACITY =
+            Integer.getInteger(SlackExecutors.class.getName() + ".teamQueueCapacity", QUEUE_CAPACITY);
+    static final int REPLAY_THREADS = Integer.getInteger(SlackExecutors.class.getName() + ".replayThreads", 2);
+    static final int NOTIFIER_THREADS = Integer.getInteger(SlackExecutors.class.getName() + ".notifierThreads", 1);
+
+    private static ListeningExecutorService publisher;
+    private static ListeningExecutorService replayer;
+    private static ThreadPoolExecutor notifier;
+    private static final Map<String, ThreadPoolExecutor> teams = new HashMap<String, ThreadPoolExecutor>();
+
+    private SlackExecutors() {
+    }
+
+    public static synchronized ListeningExecutorService publisher() {
+        if (publisher == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "Slack publisher"),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            publisher = MoreExecutors.listeningDecorator(executor);
+        }
+        return publisher;
+    }
+
+    /**
+     * The bulkhead for one team domain. Its queue never holds more than the team's dispatcher lets through.
+     */
+    static synchronized ThreadPoolExecutor forTeam(String teamDomain) {
+        String key = String.valueOf(teamDomain);
+        ThreadPoolExecutor executor = teams.get(key);
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(TEAM_THREADS, TEAM_THREADS, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "Slack publisher for " + key));
+            executor.allowCoreThreadTimeOut(true);
+            teams.put(key, executor);
+        }
+        return executor;
+    }
+
+    /**
+     * @return the number of threads posting for the team right now
+     */
+    static synchronized int activeFor(String teamDomain) {
+        ThreadPoolExecutor executor = teams.get(String.valueOf(teamDomain));
+        return executor != null ? executor.getActiveCount() : 0;
+    }
+
+    /**
+     * Runs replays of dead letters, one channel per task, apart from live notifications so that a large
+     * backlog cannot hold up the publisher threads.
+     */
+    static synchronized ListeningExecutorService replayer() {
+        if (replayer == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(REPLAY_THREADS, REPLAY_THREADS, 60L,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "Slack dead letter replay"));
+            executor.allowCoreThreadTimeOut(true);
+            replayer = MoreExecutors.listeningDecorator(executor);
+        }
+        return replayer;
+    }
+
+    /**
+     * Runs the notification for each completed build, most urgent first. The queue itself is unbounded;
+     * {@link SlackCompletion#submit} keeps it to {@link #QUEUE_CAPACITY}.
+     */
+    static synchronized ThreadPoolExecutor notifier() {
+        if (notifier == null) {
+            notifier = new ThreadPoolExecutor(NOTIFIER_THREADS, NOTIFIER_THREADS, 60L, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(11, SlackCompletion.URGENCY),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "Slack build notifier"));
+            notifier.allowCoreThreadTimeOut(true);
+        }
+        return notifier;
+    }
+
+    @Terminator
+    public static synchronized void shutdown() {
+        if (publisher != null) {
+            publisher.shutdown();
+            publisher = null;
+        }
+        if (replayer != null) {
+            replayer.shutdown();
+            replayer = null;
+        }
+        if (notifier != null) {
+            notifier.shutdown();
+            notifier = null;
+        }
+        for (ThreadPoolExecutor executor : teams.values()) {
+            executor.shutdown();
+        }
+        teams.clear();
+    }
+}
@@ -0,0 +1,298 @@
+package jenkins.plugins.slack;
+
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.util.AtomicFileWriter;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The run of consecutive failing builds a job is in, if any: the first failing build, how many builds have failed
+ * since and when the job was last known to be working. It is brought up to date as each build completes, so that
+ * "failing for 14 builds / 6 hr" and the "back to normal" downtime need no earlier builds. Failed and unstable
+ * builds extend a streak, a successful one ends it, aborted and not built ones are ignored.
+ * <p>
+ * Each job's streak is saved as a single line in {@value #FILE_NAME} in its directory, by the Slack notifier
+ * thread rather than the thread that completed the build. When that file is missing or behind the job's builds,
+ * the streak is worked out once from the builds since the last success.
+ */
+final class SlackFailureStreak {
+
+    private static final Logger logger = Logger.getLogger(SlackFailureStreak.class.getName());
+
+    static final String FILE_NAME = "slack-failure-streak";
+
+    private static final Map<Job<?, ?>, SlackFailureStreak> streaks =
+            Collections.synchronizedMap(new WeakHashMap<Job<?, ?>, SlackFailureStreak>());
+
+    /** Where the streak is saved, null to keep it in memory only. */
+    private final File file;
+    /** Held while saving, so that saves cannot overtake each other. */
+    private final Object saveLock = new Object();
+    /** The latest build taken into account. */
+    private int lastNumber;
+    /** 0 when the job is not failing. */
+    private int firstFailingBuild;
+    private int count;
+    /** When the last successful build ended, or the first failing build started if there was none. */
+    private long failingSince;
+    private long lastSuccessEndTime = -1;
+    /** How long the job had been failing if the latest successful build ended a streak, otherwise -1. */
+    private long lastDowntimeMillis = -1;
+    /** Whether there are changes not saved yet. */
+    private boolean dirty;
+
+    SlackFailureStreak(File file) {
+        this.file = file;
+    }
+
+    /**
+     * The streak of the run's job, taking into account every build up to and including the run.
+     */
+    static SlackFailureStreak of(Run<?, ?> run) {
+        return of(run.getParent(), run.getNumber(), run.getResult(), run.getStartTimeInMillis(),
+                SlackResultHistory.endTimeOf(run));
+    }
+
+    /**
+     * The streak of a job, taking into account every build up to and including the given completed one. It is
+     * only changed in memory; see {@link #saveIfTracked}.
+     */
+    static SlackFailureStreak of(Job<?, ?> job, int number, Result result, long startTime, long endTime) {
+        SlackFailureStreak streak = streaks.get(job);
+        if (streak == null) {
+            Run<?, ?> previous = job.getLastCompletedBuild();
+            while (previous != null && previous.getNumber() >= number) {
+                previous = previous.getPreviousCompletedBuild();
+            }
+            SlackFailureStreak loaded = load(job, previous);
+            synchronized (streaks) {
+                streak = streaks.get(job);
+                if (streak == null) {
+                    streaks.put(job, loaded);
+                    streak = loaded;
+                }
+            }
+        }
+        if (result != null) {
+            streak.update(number, result, startTime, endTime);
+        }
+        return streak;
+    }
+
+    /**
+     * Takes a completed build into account, if its job's streak is being kept. Only the streak in memory is
+     * changed; see {@link #saveIfTracked}.
+     */
+    static void recordIfTracked(Run<?, ?> run) {
+        SlackFailureStreak streak = streaks.get(run.getParent());
+        if (streak != null && run.getResult() != null) {
+            streak.update(run.getNumber(), run.getResult(), run.getStartTimeInMillis(),
+                    SlackResultHistory.endTimeOf(run));
+        }
+    }
+
+    /**
+     * Saves the job's streak if it is being kept and has changed since it was last saved.
+     */
+    static void saveIfTracked(Job<?, ?> job) {
+        SlackFailureStreak streak = streaks.get(job);
+        if (streak != null) {
+            streak.save();
+        }
+    }
+
+    /**
+     * @param previous the job's latest completed build before the one being notified about, which the saved
+     *                 streak must have seen to be trusted
+     */
+    static SlackFailureStreak load(Job<?, ?> job, Run<?, ?> previous) {
+        SlackFailureStreak streak = new SlackFailureStreak(new File(job.getRootDir(), FILE_NAME));
+        if (streak.file.isFile()) {
+            try {
+                if (streak.parse(FileUtils.readFileToString(streak.file, "UTF-8"))
+                        && (previous == null || streak.lastNumber >= previous.getNumber())) {
+                    return streak;
+                }
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Unable to read " + streak.file, e);
+            }
+        }
+        streak = new SlackFailureStreak(streak.file);
+        streak.rebuild(previous);
+        streak.dirty = true;
+        return streak;
+    }
+
+    private synchronized void rebuild(Run<?, ?> latest) {
+        lastNumber = 0;
+        firstFailingBuild = 0;
+        count = 0;
+        lastSuccessEndTime = -1;
+        lastDowntimeMillis = -1;
+        if (latest == null) {
+            return;
+        }
+        lastNumber = latest.getNumber();
+        Run<?, ?> run = latest;
+        while (run != null && run.getResult() != Result.SUCCESS) {
+            if (isFailing(run.getResult())) {
+                firstFailingBuild = run.getNumber();
+                failingSince = run.getStartTimeInMillis();
+                count++;
+            }
+            run = run.getPreviousCompletedBuild();
+        }
+        if (run != null) {
+            lastSuccessEndTime = SlackResultHistory.endTimeOf(run);
+            if (count > 0) {
+                failingSince = lastSuccessEndTime;
+            }
+        }
+    }
+
+    /**
+     * @return whether the streak changed; builds older than the latest one seen are ignored
+     */
+    synchronized boolean update(int number, Result result, long startTime, long endTime) {
+        if (number <= lastNumber) {
+            return false;
+        }
+        lastNumber = number;
+        if (result == Result.SUCCESS) {
+            lastDowntimeMillis = firstFailingBuild != 0 ? endTime - failingSince : -1;
+            firstFailingBuild = 0;
+            count = 0;
+            lastSuccessEndTime = endTime;
+        } else if (isFailing(result)) {
+            if (firstFailingBuild == 0) {
+                firstFailingBuild = number;
+                failingSince = lastSuccessEndTime >= 0 ? lastSuccessEndTime : startTime;
+            }
+            count++;
+        }
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * @return a copy of the streak as it is now, which is not saved
+     */
+    synchronized SlackFailureStreak snapshot() {
+        SlackFailureStreak copy = new SlackFailureStreak(null);
+        copy.lastNumber = lastNumber;
+        copy.firstFailingBuild = firstFailingBuild;
+        copy.count = count;
+        copy.failingSince = failingSince;
+        copy.lastSuccessEndTime = lastSuccessEndTime;
+        copy.lastDowntimeMillis = lastDowntimeMillis;
+        return copy;
+    }
+
+    private static boolean isFailing(Result result) {
+        return result == Result.FAILURE || result == Result.UNSTABLE;
+    }
+
+    /**
+     * Writes the streak outside its lock, so that recording a build never waits on the disk.
+     */
+    private void save() {
+        if (file == null) {
+            return;
+        }
+        synchronized (saveLock) {
+            String line;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                line = format();
+                dirty = false;
+            }
+            try {
+                AtomicFileWriter writer = new AtomicFileWriter(file);
+                try {
+                    writer.write(line);
+                    writer.commit();
+                } finally {
+                    writer.abort();
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    dirty = true;
+                }
+                logger.log(Level.WARNING, "Unable to save the Slack failure streak to " + file, e);
+            }
+        }
+    }
+
+    /**
+     * {@code lastNumber firstFailingBuild count failingSince lastSuccessEndTime lastDowntimeMillis}
+     */
+    synchronized String format() {
+        return lastNumber + " " + firstFailingBuild + " " + count + " " + failingSince + " " + lastSuccessEndTime
+                + " " + lastDowntimeMillis + "\n";
+    }
+
+    /**
+     * @return false if the line is not a saved streak, in which case nothing is changed
+     */
+    synchronized boolean parse(String line) {
+        String[] fields = line.trim().split(" ");
+        if (fields.length != 6) {
+            return false;
+        }
+        try {
+            int number = Integer.parseInt(fields[0]);
+            int first = Integer.parseInt(fields[1]);
+            int failures = Integer.parseInt(fields[2]);
+            long since = Long.parseLong(fields[3]);
+            long successEnd = Long.parseLong(fields[4]);
+            long downtime = Long.parseLong(fields[5]);
+            lastNumber = number;
+            firstFailingBuild = first;
+            count = failures;
+            failingSince = since;
+            lastSuccessEndTime = successEnd;
+            lastDowntimeMillis = downtime;
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    synchronized boolean isFailing() {
+        return firstFailingBuild != 0;
+    }
+
+    synchronized int getFirstFailingBuild() {
+        return firstFailingBuild;
+    }
+
+    /**
+     * @return the number of failed and unstable builds in the current streak, 0 if the job is not failing
+     */
+    synchronized int getCount() {
+        return count;
+    }
+
+    synchronized long getFailingSince() {
+        return failingSince;
+    }
+
+    /**
+     * @return how long the job had been failing when {@code number} brought it back, -1 if that build was not
+     * the one that ended a streak
+     */
+    synchronized long downtimeEndedBy(int number) {
+        return number == lastNumber && firstFailingBuild == 0 ? lastDowntimeMillis : -1;
+    }
+}
@@ -1,15 +1,21 @@
 package jenkins.plugins.slack;
 
 import hudson.Extension;
+import hudson.XmlFile;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
-import hudson.model.Descriptor;
+import hudson.model.Item;
+import hudson.model.Saveable;
 import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
 import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SaveableListener;
 import hudson.tasks.Publisher;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.logging.Logger;
 
 @Extension
@@ -18,13 +24,30 @@ public class SlackListener extends RunListener<AbstractBuild> {
 
     private static final Logger logger = Logger.getLogger(SlackListener.class.getName());
 
+    /**
+     * The notifier each project was last found to have, so that builds of projects without one cost a map
+     * lookup. Dropped whenever the project changes.
+     */
+    private static final Map<AbstractProject<?, ?>, Lookup> lookups =
+            Collections.synchronizedMap(new WeakHashMap<AbstractProject<?, ?>, Lookup>());
+    private static final FineGrainedNotifier DISABLED = new DisabledNotifier();
+
     public SlackListener() {
         super(AbstractBuild.class);
     }
 
     @Override
     public void onCompleted(AbstractBuild r, TaskListener listener) {
-        getNotifier(r.getProject(), listener).completed(r);
+        SlackResultHistory.recordIfTracked(r);
+        // saved by the notification, not here
+        SlackFailureStreak.recordIfTracked(r);
+        SlackNotifier notifier = findNotifier(r.getProject());
+        if (notifier != null) {
+            SlackCompletion completion = SlackCompletion.of(r, notifier);
+            if (completion != null) {
+                completion.submit();
+            }
+        }
         super.onCompleted(r, listener);
     }
 
@@ -48,13 +71,64 @@ public class SlackListener extends RunListener<AbstractBuild> {
 
     @SuppressWarnings("unchecked")
     FineGrainedNotifier getNotifier(AbstractProject project, TaskListener listener) {
-        Map<Descriptor<Publisher>, Publisher> map = project.getPublishersList().toMap();
-        for (Publisher publisher : map.values()) {
-            if (publisher instanceof SlackNotifier) {
-                return new ActiveNotifier((SlackNotifier) publisher, (BuildListener)listener);
+        SlackNotifier notifier = findNotifier(project);
+        if (notifier != null) {
+            return new ActiveNotifier(notifier, (BuildListener)listener);
+        }
+        return DISABLED;
+    }
+
+    static SlackNotifier findNotifier(AbstractProject<?, ?> project) {
+        Lookup lookup = lookups.get(project);
+        if (lookup == null) {
+            SlackNotifier notifier = null;
+            for (Publisher publisher : project.getPublishersList()) {
+                if (publisher instanceof SlackNotifier) {
+                    notifier = (SlackNotifier) publisher;
+                    break;
+                }
             }
+            lookup = notifier != null ? new Lookup(notifier) : Lookup.NONE;
+            lookups.put(project, lookup);
+        }
+        return lookup.notifier;
+    }
+
+    static void forget(Object item) {
+        if (item instanceof AbstractProject) {
+            lookups.remove(item);
+        }
+    }
+
+    private static final class Lookup {
+        static final Lookup NONE = new Lookup(null);
+
+        final SlackNotifier notifier;
+
+        Lookup(SlackNotifier notifier) {
+            this.notifier = notifier;
+        }
+    }
+
+    @Extension
+    public static class ProjectListener extends ItemListener {
+        @Override
+        public void onUpdated(Item item) {
+            forget(item);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            forget(item);
+        }
+    }
+
+    @Extension
+    public static class ConfigurationListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            forget(o);
         }
-        return new DisabledNotifier();
     }
 
 }
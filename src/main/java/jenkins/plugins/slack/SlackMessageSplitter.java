@@ -0,0 +1,209 @@
+package jenkins.plugins.slack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a message that would make an oversize post into ordered parts, each sent as its own post. Sizes are
+ * measured as the bytes the text adds to the request body, while walking the message once: the text goes into
+ * the post twice, as the attachment's fallback and its field value, and each copy is JSON-escaped UTF-8 that is
+ * form-URL-encoded on top unless {@link StandardSlackService#JSON_BODY} is set. Parts end at line boundaries;
+ * only a single line longer than a whole part is cut in the middle. The number of parts is capped, so however
+ * large a merge is, it cannot turn into more than a bounded number of bounded posts. The note saying what was
+ * left out counts towards the last part's size, and is left off when the limit is too small to hold it.
+ */
+final class SlackMessageSplitter {
+
+    /** Limit on what a message adds to the request body. */
+    static final int MAX_BYTES = Integer.getInteger(SlackMessageSplitter.class.getName() + ".maxBytes", 8000);
+    static final int MAX_PARTS = Integer.getInteger(SlackMessageSplitter.class.getName() + ".maxParts", 10);
+
+    /** The attachment's fallback and its field value. */
+    private static final int COPIES = 2;
+    private static final boolean FORM_ENCODED = !StandardSlackService.JSON_BODY;
+
+    private SlackMessageSplitter() {
+    }
+
+    static List<String> split(String message) {
+        return split(message, MAX_BYTES, MAX_PARTS);
+    }
+
+    /**
+     * @return the message itself if it fits, otherwise up to {@code maxParts} parts. Continuations are headed
+     * with their position, and the last part says how many lines were left out when the cap was hit.
+     */
+    static List<String> split(String message, int maxBytes, int maxParts) {
+        if (message == null || postedSize(message, 0, message.length(), maxBytes + 1) <= maxBytes) {
+            return Collections.singletonList(message);
+        }
+        // room left in every part for the longest continuation header
+        String header = "(continued " + maxParts + "/" + maxParts + ")\n";
+        int limit = Math.max(1, maxBytes - postedSize(header, 0, header.length(), Integer.MAX_VALUE));
+        List<String> parts = new ArrayList<String>();
+        int lastStart = 0;
+        int partStart = 0;
+        int partSize = 0;
+        int lineStart = 0;
+        int length = message.length();
+        while (lineStart < length) {
+            int newline = message.indexOf('\n', lineStart);
+            int lineEnd = newline < 0 ? length : newline + 1;
+            int lineSize = postedSize(message, lineStart, lineEnd, Integer.MAX_VALUE);
+            if (partSize + lineSize > limit && partSize > 0) {
+                parts.add(trimNewline(message.substring(partStart, lineStart)));
+                lastStart = partStart;
+                partStart = lineStart;
+                partSize = 0;
+                if (parts.size() == maxParts) {
+                    break;
+                }
+            }
+            if (lineSize > limit) {
+                // a single line bigger than a part: cut it where the part is full
+                int cut = cutIndex(message, lineStart, lineEnd, limit);
+                parts.add(trimNewline(message.substring(lineStart, cut)));
+                lastStart = lineStart;
+                partStart = cut;
+                partSize = 0;
+                lineStart = cut;
+                if (parts.size() == maxParts) {
+                    break;
+                }
+                continue;
+            }
+            partSize += lineSize;
+            lineStart = lineEnd;
+        }
+        if (partStart < length && parts.size() < maxParts) {
+            parts.add(trimNewline(message.substring(partStart)));
+            partStart = length;
+        }
+        if (partStart < length) {
+            // the cap was hit: refill the last part leaving room for the longest note on what was left out
+            String longest = notShown(countLines(message, 0));
+            int room = limit - postedSize(longest, 0, longest.length(), Integer.MAX_VALUE);
+            int end = room > 0 ? fill(message, lastStart, room) : lastStart;
+            if (end > lastStart) {
+                parts.set(parts.size() - 1, trimNewline(message.substring(lastStart, end))
+                        + notShown(countLines(message, end)));
+            }
+        }
+        for (int i = 1; i < parts.size(); i++) {
+            parts.set(i, "(continued " + (i + 1) + "/" + parts.size() + ")\n" + parts.get(i));
+        }
+        return parts;
+    }
+
+    /**
+     * What {@code text[from, to)} adds to the request body, counting stops early once it exceeds {@code stopAt}.
+     */
+    static int postedSize(CharSequence text, int from, int to, int stopAt) {
+        int size = 0;
+        for (int i = from; i < to && size <= stopAt; i++) {
+            size += postedSize(text.charAt(i));
+        }
+        return size;
+    }
+
+    private static int postedSize(char c) {
+        return COPIES * (FORM_ENCODED ? formEncodedSize(c) : encodedSize(c));
+    }
+
+    /**
+     * Form-URL-encoded size of the JSON escape of {@code c}: letters, digits, {@code -_.*} and the space
+     * (as {@code +}) take one byte, any other byte three.
+     */
+    private static int formEncodedSize(char c) {
+        if (c == '"' || c == '\\') {
+            return 6;
+        }
+        if (c < 0x20) {
+            // a backslash and a letter, or a backslash and u00XX
+            return c == '\n' || c == '\r' || c == '\t' || c == '\b' || c == '\f' ? 4 : 8;
+        }
+        if (c < 0x80) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '*' || c == ' ' ? 1 : 3;
+        }
+        return 3 * encodedSize(c);
+    }
+
+    private static int encodedSize(char c) {
+        if (c == '"' || c == '\\') {
+            return 2;
+        }
+        if (c < 0x20) {
+            return c == '\n' || c == '\r' || c == '\t' || c == '\b' || c == '\f' ? 2 : 6;
+        }
+        if (c < 0x80) {
+            return 1;
+        }
+        if (c < 0x800) {
+            return 2;
+        }
+        if (Character.isHighSurrogate(c)) {
+            // the pair takes four bytes, the low surrogate counts for nothing
+            return 4;
+        }
+        return Character.isLowSurrogate(c) ? 0 : 3;
+    }
+
+    private static String notShown(int lines) {
+        return "\n... " + lines + " more line(s) not shown";
+    }
+
+    /**
+     * @return where a part starting at {@code from} ends if it takes whole lines up to {@code limit}, or cuts
+     * its first line if even that is too big; {@code from} if not even a character fits
+     */
+    private static int fill(String text, int from, int limit) {
+        int size = 0;
+        int end = from;
+        while (end < text.length()) {
+            int newline = text.indexOf('\n', end);
+            int lineEnd = newline < 0 ? text.length() : newline + 1;
+            int lineSize = postedSize(text, end, lineEnd, Integer.MAX_VALUE);
+            if (size + lineSize > limit) {
+                if (end > from) {
+                    return end;
+                }
+                int cut = cutIndex(text, from, lineEnd, limit);
+                return postedSize(text, from, cut, limit) <= limit ? cut : from;
+            }
+            size += lineSize;
+            end = lineEnd;
+        }
+        return end;
+    }
+
+    private static int cutIndex(String text, int from, int to, int limit) {
+        int size = 0;
+        int i = from;
+        while (i < to) {
+            int charSize = postedSize(text.charAt(i));
+            int step = Character.isHighSurrogate(text.charAt(i)) && i + 1 < to ? 2 : 1;
+            if (size + charSize > limit && i > from) {
+                break;
+            }
+            size += charSize;
+            i += step;
+        }
+        return i;
+    }
+
+    private static String trimNewline(String part) {
+        return part.endsWith("\n") ? part.substring(0, part.length() - 1) : part;
+    }
+
+    private static int countLines(String text, int from) {
+        int lines = 1;
+        for (int i = from; i < text.length() - 1; i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,356 @@
+package jenkins.plugins.slack;
+
+import hudson.init.Terminator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counters, latency histograms and in-flight gauges for Slack posts, kept per team domain and per channel.
+ * Every meter is registered as an MXBean under {@code jenkins.plugins.slack}; {@link SlackMetricsAction}
+ * serves the same numbers as JSON. Team meters also show the gauges of what the team shares: its concurrency
+ * limit and bulkhead. At most {@link #MAX_CHANNELS} channel meters are kept, dropping the ones posted to
+ * least recently; what they counted stays in their team's totals.
+ */
+public final class SlackMetrics {
+
+    private static final Logger logger = Logger.getLogger(SlackMetrics.class.getName());
+
+    static final String DOMAIN = "jenkins.plugins.slack";
+    static final int MAX_CHANNELS = Integer.getInteger(SlackMetrics.class.getName() + ".maxChannels", 500);
+
+    private static final ConcurrentMap<String, TeamMeter> teams = new ConcurrentHashMap<String, TeamMeter>();
+    private static final ConcurrentMap<String, Meter> channels = new ConcurrentHashMap<String, Meter>();
+
+    private SlackMetrics() {
+    }
+
+    /**
+     * The meter for one channel. What is recorded there also counts towards its team.
+     */
+    public static Meter forRoom(String teamDomain, String roomId) {
+        String key = teamDomain + '/' + roomId;
+        Meter meter = channels.get(key);
+        if (meter == null) {
+            meter = register(channels, key, new Meter(teamDomain, roomId, forTeam(teamDomain)));
+            if (channels.size() > MAX_CHANNELS) {
+                evictIdleChannels(MAX_CHANNELS);
+            }
+        }
+        return meter;
+    }
+
+    public static TeamMeter forTeam(String teamDomain) {
+        String key = String.valueOf(teamDomain);
+        TeamMeter meter = teams.get(key);
+        if (meter == null) {
+            meter = register(teams, key, new TeamMeter(teamDomain));
+        }
+        return meter;
+    }
+
+    public static Map<String, TeamMeter> getTeams() {
+        return new TreeMap<String, TeamMeter>(teams);
+    }
+
+    public static Map<String, Meter> getChannels() {
+        return new TreeMap<String, Meter>(channels);
+    }
+
+    private static synchronized <M extends Meter> M register(ConcurrentMap<String, M> meters, String key,
+                                                             M created) {
+        M existing = meters.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(created, created.getObjectName());
+        } catch (JMException e) {
+            logger.log(Level.FINE, "Unable to register Slack metrics for " + key, e);
+        }
+        return created;
+    }
+
+    /**
+     * Drops the channel meters posted to least recently until at most {@code max} are left.
+     */
+    static synchronized void evictIdleChannels(int max) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        while (channels.size() > max) {
+            Map.Entry<String, Meter> idlest = null;
+            for (Map.Entry<String, Meter> channel : channels.entrySet()) {
+                if (idlest == null || channel.getValue().lastUsed - idlest.getValue().lastUsed < 0) {
+                    idlest = channel;
+                }
+            }
+            if (idlest == null) {
+                return;
+            }
+            channels.remove(idlest.getKey());
+            try {
+                server.unregisterMBean(idlest.getValue().getObjectName());
+            } catch (JMException e) {
+                logger.log(Level.FINE, "Unable to unregister Slack metrics for " + idlest.getKey(), e);
+            }
+        }
+    }
+
+    @Terminator
+    public static void unregister() {
+        unregister(channels);
+        unregister(teams);
+    }
+
+    private static synchronized void unregister(ConcurrentMap<String, ? extends Meter> meters) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Meter meter : meters.values()) {
+            try {
+                server.unregisterMBean(meter.getObjectName());
+            } catch (JMException e) {
+                logger.log(Level.FINE, "Unable to unregister Slack metrics", e);
+            }
+        }
+        meters.clear();
+    }
+
+    public interface MeterMXBean {
+        long getAttempts();
+
+        long getSuccesses();
+
+        long getFailures();
+
+        /** Failures by HTTP status; requests that got no response at all are counted under "none". */
+        Map<String, Long> getFailuresByStatus();
+
+        long getTimeouts();
+
+        /** Messages not sent because the same message had just gone to the channel. */
+        long getSuppressed();
+
+        int getInFlight();
+
+        double getLatencyP50Millis();
+
+        double getLatencyP90Millis();
+
+        double getLatencyP99Millis();
+
+        double getLatencyMaxMillis();
+    }
+
+    public interface TeamMeterMXBean extends MeterMXBean {
+        /** The team's current adaptive limit on posts in flight, see {@link SlackConcurrencyLimiter}. */
+        int getConcurrencyLimit();
+
+        /** Asynchronous posts waiting for the team's bulkhead, see {@link SlackDispatcher}. */
+        int getBulkheadQueued();
+
+        /** Threads of the team's bulkhead busy posting. */
+        int getBulkheadActive();
+
+        /** Posts refused because the team's bulkhead queue was full. */
+        long getBulkheadRejected();
+    }
+
+    public static class Meter implements MeterMXBean {
+
+        private final String teamDomain;
+        private final String roomId;
+        private final Meter team;
+        /** {@link System#nanoTime()} of the latest post or suppressed message. */
+        private volatile long lastUsed = System.nanoTime();
+        private final AtomicLong attempts = new AtomicLong();
+        private final AtomicLong successes = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong suppressed = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final ConcurrentMap<Integer, AtomicLong> failures = new ConcurrentHashMap<Integer, AtomicLong>();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Meter(String teamDomain, String roomId, Meter team) {
+            this.teamDomain = teamDomain;
+            this.roomId = roomId;
+            this.team = team;
+        }
+
+        /**
+         * @return the start time to pass to {@link #completed}
+         */
+        long started() {
+            lastUsed = System.nanoTime();
+            attempts.incrementAndGet();
+            inFlight.incrementAndGet();
+            if (team != null) {
+                team.started();
+            }
+            return System.nanoTime();
+        }
+
+        /**
+         * @param statusCode the HTTP status, or {@link RoomResult#NO_STATUS} if there was no response
+         */
+        void completed(long started, int statusCode) {
+            complete(System.nanoTime() - started, statusCode);
+        }
+
+        /**
+         * A post that failed without a response; read and connect timeouts also count as timeouts.
+         */
+        void failed(long started, Throwable cause) {
+            completed(started, RoomResult.NO_STATUS);
+            if (cause instanceof InterruptedIOException) {
+                timedOut();
+            }
+        }
+
+        /**
+         * The notification's deadline ran out.
+         */
+        void timedOut() {
+            timeouts.incrementAndGet();
+            if (team != null) {
+                team.timedOut();
+            }
+        }
+
+        /**
+         * A duplicate message was dropped instead of being posted.
+         */
+        void suppressed() {
+            lastUsed = System.nanoTime();
+            suppressed.incrementAndGet();
+            if (team != null) {
+                team.suppressed();
+            }
+        }
+
+        private void complete(long elapsedNanos, int statusCode) {
+            inFlight.decrementAndGet();
+            latency.record(elapsedNanos);
+            if (statusCode == 200) {
+                successes.incrementAndGet();
+            } else {
+                AtomicLong counter = failures.get(statusCode);
+                if (counter == null) {
+                    AtomicLong created = new AtomicLong();
+                    counter = failures.putIfAbsent(statusCode, created);
+                    if (counter == null) {
+                        counter = created;
+                    }
+                }
+                counter.incrementAndGet();
+            }
+            if (team != null) {
+                team.complete(elapsedNanos, statusCode);
+            }
+        }
+
+        public String getTeamDomain() {
+            return teamDomain;
+        }
+
+        /**
+         * @return the channel, or null for a team's totals
+         */
+        public String getRoomId() {
+            return roomId;
+        }
+
+        public long getAttempts() {
+            return attempts.get();
+        }
+
+        public long getSuccesses() {
+            return successes.get();
+        }
+
+        public long getFailures() {
+            long total = 0;
+            for (AtomicLong counter : failures.values()) {
+                total += counter.get();
+            }
+            return total;
+        }
+
+        public Map<String, Long> getFailuresByStatus() {
+            Map<String, Long> byStatus = new TreeMap<String, Long>();
+            for (Map.Entry<Integer, AtomicLong> entry : failures.entrySet()) {
+                String status = entry.getKey() == RoomResult.NO_STATUS ? "none" : String.valueOf(entry.getKey());
+                byStatus.put(status, entry.getValue().get());
+            }
+            return byStatus;
+        }
+
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        public long getSuppressed() {
+            return suppressed.get();
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public double getLatencyP50Millis() {
+            return latency.getQuantileMicros(0.5) / 1000.0;
+        }
+
+        public double getLatencyP90Millis() {
+            return latency.getQuantileMicros(0.9) / 1000.0;
+        }
+
+        public double getLatencyP99Millis() {
+            return latency.getQuantileMicros(0.99) / 1000.0;
+        }
+
+        public double getLatencyMaxMillis() {
+            return latency.getMaxMicros() / 1000.0;
+        }
+
+        ObjectName getObjectName() throws JMException {
+            return new ObjectName(DOMAIN + ":type=" + (roomId == null ? "Team" : "Channel")
+                    + ",team=" + ObjectName.quote(String.valueOf(teamDomain))
+                    + (roomId == null ? "" : ",channel=" + ObjectName.quote(roomId)));
+        }
+    }
+
+    /**
+     * A team's totals, together with the state of what its channels share.
+     */
+    public static final class TeamMeter extends Meter implements TeamMeterMXBean {
+
+        TeamMeter(String teamDomain) {
+            super(teamDomain, null, null);
+        }
+
+        public int getConcurrencyLimit() {
+            return SlackConcurrencyLimiter.limitFor(getTeamDomain());
+        }
+
+        public int getBulkheadQueued() {
+            return SlackDispatcher.queuedFor(getTeamDomain());
+        }
+
+        public int getBulkheadActive() {
+            return SlackExecutors.activeFor(getTeamDomain());
+        }
+
+        public long getBulkheadRejected() {
+            return SlackDispatcher.rejectedFor(getTeamDomain());
+        }
+    }
+}
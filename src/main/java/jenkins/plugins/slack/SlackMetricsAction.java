@@ -0,0 +1,91 @@
+package jenkins.plugins.slack;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Serves {@link SlackMetrics} as JSON at {@code /slack-metrics/}, for monitoring systems to poll. Channel names
+ * and team domains are not for everyone to see, so this needs {@link Jenkins#ADMINISTER}.
+ */
+@Extension
+public class SlackMetricsAction implements RootAction {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Slack Metrics";
+    }
+
+    public String getUrlName() {
+        return "slack-metrics";
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.setHeader("Cache-Control", "no-cache");
+        JsonGenerator json = JSON_FACTORY.createGenerator(rsp.getWriter());
+        writeMetrics(json);
+        json.close();
+    }
+
+    static void writeMetrics(JsonGenerator json) throws IOException {
+        Map<String, SlackMetrics.Meter> channels = SlackMetrics.getChannels();
+        json.writeStartObject();
+        json.writeObjectFieldStart("teams");
+        for (SlackMetrics.TeamMeter team : SlackMetrics.getTeams().values()) {
+            json.writeObjectFieldStart(String.valueOf(team.getTeamDomain()));
+            writeMeter(json, team);
+            json.writeNumberField("concurrencyLimit", team.getConcurrencyLimit());
+            json.writeObjectFieldStart("bulkhead");
+            json.writeNumberField("queued", team.getBulkheadQueued());
+            json.writeNumberField("active", team.getBulkheadActive());
+            json.writeNumberField("rejected", team.getBulkheadRejected());
+            json.writeEndObject();
+            json.writeObjectFieldStart("channels");
+            for (SlackMetrics.Meter channel : channels.values()) {
+                if (String.valueOf(team.getTeamDomain()).equals(String.valueOf(channel.getTeamDomain()))) {
+                    json.writeObjectFieldStart(channel.getRoomId());
+                    writeMeter(json, channel);
+                    json.writeEndObject();
+                }
+            }
+            json.writeEndObject();
+            json.writeEndObject();
+        }
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    private static void writeMeter(JsonGenerator json, SlackMetrics.Meter meter) throws IOException {
+        json.writeNumberField("attempts", meter.getAttempts());
+        json.writeNumberField("successes", meter.getSuccesses());
+        json.writeNumberField("failures", meter.getFailures());
+        json.writeObjectFieldStart("failuresByStatus");
+        for (Map.Entry<String, Long> failures : meter.getFailuresByStatus().entrySet()) {
+            json.writeNumberField(failures.getKey(), failures.getValue());
+        }
+        json.writeEndObject();
+        json.writeNumberField("timeouts", meter.getTimeouts());
+        json.writeNumberField("suppressed", meter.getSuppressed());
+        json.writeNumberField("inFlight", meter.getInFlight());
+        json.writeObjectFieldStart("latencyMillis");
+        json.writeNumberField("p50", meter.getLatencyP50Millis());
+        json.writeNumberField("p90", meter.getLatencyP90Millis());
+        json.writeNumberField("p99", meter.getLatencyP99Millis());
+        json.writeNumberField("max", meter.getLatencyMaxMillis());
+        json.writeEndObject();
+    }
+}
@@ -7,6 +7,8 @@ import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
 import hudson.model.Descriptor;
+import hudson.model.Result;
+import hudson.model.TaskListener;
 import hudson.model.listeners.ItemListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
@@ -17,6 +19,7 @@ import jenkins.model.Jenkins;
 import jenkins.model.JenkinsLocationConfiguration;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
@@ -158,7 +161,30 @@ public class SlackNotifier extends Notifier {
         return BuildStepMonitor.NONE;
     }
 
+    /**
+     * The global Slack configuration, or null when running outside of Jenkins.
+     */
+    static DescriptorImpl globalConfig() {
+        Jenkins jenkins = Jenkins.getInstance();
+        return jenkins == null ? null : jenkins.getDescriptorByType(DescriptorImpl.class);
+    }
+
     public SlackService newSlackService(AbstractBuild r, BuildListener listener) {
+        return newSlackService(r, environmentOf(r, listener));
+    }
+
+    /**
+     * @param env the build's environment, used to expand the team domain, token and channel
+     */
+    SlackService newSlackService(AbstractBuild r, EnvVars env) {
+        return newSlackService(r.getProject().getFullName(), r.getNumber(), r.getResult(), env);
+    }
+
+    /**
+     * @param job the full name of the job notified about
+     * @param build the number of the build notified about
+     */
+    SlackService newSlackService(String job, int build, Result result, EnvVars env) {
         String teamDomain = this.teamDomain;
         if (StringUtils.isEmpty(teamDomain)) {
             teamDomain = getDescriptor().getTeamDomain();
@@ -172,18 +198,27 @@ public class SlackNotifier extends Notifier {
             room = getDescriptor().getRoom();
         }
 
-        EnvVars env = null;
-        try {
-            env = r.getEnvironment(listener);
-        } catch (Exception e) {
-            listener.getLogger().println("Error retrieving environment vars: " + e.getMessage());
-            env = new EnvVars();
-        }
         teamDomain = env.expand(teamDomain);
         authToken = env.expand(authToken);
         room = env.expand(room);
 
-        return new StandardSlackService(teamDomain, authToken, room);
+        StandardSlackService service = new StandardSlackService(teamDomain, authToken, room);
+        service.setOrigin(job, build);
+        service.setPriority(SlackPriority.of(result));
+        return service;
+    }
+
+    /**
+     * Computes the build's environment, an empty one if that fails. This runs every EnvironmentContributor, so
+     * callers that need it more than once should hold on to it.
+     */
+    static EnvVars environmentOf(AbstractBuild r, TaskListener listener) {
+        try {
+            return r.getEnvironment(listener);
+        } catch (Exception e) {
+            listener.getLogger().println("Error retrieving environment vars: " + e.getMessage());
+            return new EnvVars();
+        }
     }
 
     @Override
@@ -197,7 +232,7 @@ public class SlackNotifier extends Notifier {
             Map<Descriptor<Publisher>, Publisher> map = build.getProject().getPublishersList().toMap();
             for (Publisher publisher : map.values()) {
                 if (publisher instanceof SlackNotifier) {
-                    logger.info("Invoking Started...");
+                    logger.fine("Invoking Started...");
                     new ActiveNotifier((SlackNotifier) publisher, listener).started(build);
                 }
             }
@@ -213,6 +248,15 @@ public class SlackNotifier extends Notifier {
         private String room;
         private String buildServerUrl;
         private String sendAs;
+        private int coalesceWindowSeconds;
+        private int dedupWindowSeconds;
+        private int connectTimeoutSeconds = DEFAULT_CONNECT_TIMEOUT_SECONDS;
+        private int readTimeoutSeconds = DEFAULT_READ_TIMEOUT_SECONDS;
+        private int notificationTimeoutSeconds = DEFAULT_NOTIFICATION_TIMEOUT_SECONDS;
+
+        public static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 10;
+        public static final int DEFAULT_READ_TIMEOUT_SECONDS = 30;
+        public static final int DEFAULT_NOTIFICATION_TIMEOUT_SECONDS = 120;
 
         public static final CommitInfoChoice[] COMMIT_INFO_CHOICES = CommitInfoChoice.values();
 
@@ -246,6 +290,26 @@ public class SlackNotifier extends Notifier {
             return sendAs;
         }
 
+        public int getCoalesceWindowSeconds() {
+            return coalesceWindowSeconds;
+        }
+
+        public int getDedupWindowSeconds() {
+            return dedupWindowSeconds;
+        }
+
+        public int getConnectTimeoutSeconds() {
+            return connectTimeoutSeconds > 0 ? connectTimeoutSeconds : DEFAULT_CONNECT_TIMEOUT_SECONDS;
+        }
+
+        public int getReadTimeoutSeconds() {
+            return readTimeoutSeconds > 0 ? readTimeoutSeconds : DEFAULT_READ_TIMEOUT_SECONDS;
+        }
+
+        public int getNotificationTimeoutSeconds() {
+            return notificationTimeoutSeconds > 0 ? notificationTimeoutSeconds : DEFAULT_NOTIFICATION_TIMEOUT_SECONDS;
+        }
+
         public boolean isApplicable(Class<? extends AbstractProject> aClass) {
             return true;
         }
@@ -279,6 +343,14 @@ public class SlackNotifier extends Notifier {
             room = sr.getParameter("slackRoom");
             buildServerUrl = sr.getParameter("slackBuildServerUrl");
             sendAs = sr.getParameter("slackSendAs");
+            coalesceWindowSeconds = Math.max(0, NumberUtils.toInt(sr.getParameter("slackCoalesceWindowSeconds"), 0));
+            dedupWindowSeconds = Math.max(0, NumberUtils.toInt(sr.getParameter("slackDedupWindowSeconds"), 0));
+            connectTimeoutSeconds = NumberUtils.toInt(sr.getParameter("slackConnectTimeoutSeconds"),
+                    DEFAULT_CONNECT_TIMEOUT_SECONDS);
+            readTimeoutSeconds = NumberUtils.toInt(sr.getParameter("slackReadTimeoutSeconds"),
+                    DEFAULT_READ_TIMEOUT_SECONDS);
+            notificationTimeoutSeconds = NumberUtils.toInt(sr.getParameter("slackNotificationTimeoutSeconds"),
+                    DEFAULT_NOTIFICATION_TIMEOUT_SECONDS);
             if(buildServerUrl == null || buildServerUrl == "") {
                 JenkinsLocationConfiguration jenkinsConfig = new JenkinsLocationConfiguration();
                 buildServerUrl = jenkinsConfig.getUrl();
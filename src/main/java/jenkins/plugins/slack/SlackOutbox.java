@@ -0,0 +1,278 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Durable hand-off point for asynchronous notifications. Every room's message is journaled under
+ * {@code $JENKINS_HOME/slack-outbox} before it is sent, delivered through the {@link SlackCoalescer}, and
+ * acknowledged once Slack has accepted or definitively rejected it. Messages still in the journal when Jenkins
+ * stops are replayed on the next start.
+ * <p>
+ * A notification made of several posts, such as the parts of a split message or a status followed by its commit
+ * list, is journaled in one go. Each room is then sent the posts one at a time: the next only once the one
+ * before it has been accepted. If one is given up on, so are the rest. Replayed messages go to each room in the
+ * order they were journaled.
+ * <p>
+ * Transient failures are retried for up to {@link #MAX_AGE_MILLIS}, but whoever submitted the notification is
+ * only kept waiting until its deadline: then it is told the room timed out, and the retries carry on without it.
+ */
+public final class SlackOutbox {
+
+    private static final Logger logger = Logger.getLogger(SlackOutbox.class.getName());
+
+    static final boolean DISABLED = Boolean.getBoolean(SlackOutbox.class.getName() + ".disabled");
+    static final long MAX_SEGMENT_BYTES =
+            Long.getLong(SlackOutbox.class.getName() + ".maxSegmentBytes", 4 * 1024 * 1024L);
+    static final int SYNC_BATCH_SIZE = Integer.getInteger(SlackOutbox.class.getName() + ".syncBatchSize", 32);
+    static final long SYNC_INTERVAL_MILLIS = Long.getLong(SlackOutbox.class.getName() + ".syncIntervalMillis", 200L);
+    static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    static final long MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    private static volatile SlackOutbox instance;
+
+    private final OutboxJournal journal;
+    private ScheduledFuture<?> syncTask;
+
+    SlackOutbox(OutboxJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * The running outbox, or null if it is disabled or Jenkins has not started it.
+     */
+    public static SlackOutbox get() {
+        return instance;
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static synchronized void start() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (DISABLED || instance != null || jenkins == null) {
+            return;
+        }
+        SlackOutbox outbox = new SlackOutbox(new OutboxJournal(new File(jenkins.getRootDir(), "slack-outbox"),
+                MAX_SEGMENT_BYTES, SYNC_BATCH_SIZE));
+        try {
+            outbox.replay(outbox.journal.open());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to open the Slack outbox, notifications will not be journaled", e);
+            return;
+        }
+        outbox.syncTask = Timer.get().scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                SlackOutbox current = instance;
+                if (current != null) {
+                    current.sync();
+                }
+            }
+        }, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        instance = outbox;
+    }
+
+    @Terminator
+    public static synchronized void stop() {
+        SlackOutbox outbox = instance;
+        instance = null;
+        if (outbox != null) {
+            outbox.syncTask.cancel(false);
+            try {
+                outbox.journal.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to close the Slack outbox", e);
+            }
+        }
+    }
+
+    /**
+     * Journals {@code parts} for each of {@code rooms} and schedules delivery, the parts in order.
+     * The returned future completes once every room has been acknowledged, or has timed out.
+     *
+     * @throws IOException if the parts could not be journaled; then none of them were
+     */
+    ListenableFuture<PublishResult> submit(StandardSlackService service, String[] rooms, List<String> parts,
+                                           String color) throws IOException {
+        List<OutboxEntry> entries = journal.appendAll(service.getTeamDomain(), service.getToken(), rooms, parts,
+                color, service.getOriginJob(), service.getOriginBuild());
+        long timeoutNanos = SlackClientConfiguration.get().getNotificationTimeoutNanos();
+        List<ListenableFuture<RoomResult>> results = new ArrayList<ListenableFuture<RoomResult>>();
+        for (int room = 0; room < rooms.length; room++) {
+            List<OutboxEntry> chain = entries.subList(room * parts.size(), (room + 1) * parts.size());
+            results.add(withDeadline(rooms[room], deliverInOrder(chain, service), timeoutNanos));
+        }
+        return Futures.transform(Futures.allAsList(results), PublishResult.FROM_ROOM_RESULTS);
+    }
+
+    /**
+     * @return {@code delivered}, or the room timing out if that takes longer than {@code timeoutNanos}
+     */
+    private static ListenableFuture<RoomResult> withDeadline(final String roomId,
+                                                             ListenableFuture<RoomResult> delivered,
+                                                             long timeoutNanos) {
+        final SettableFuture<RoomResult> result = SettableFuture.create();
+        final ScheduledFuture<?> timeout = Timer.get().schedule(new Runnable() {
+            public void run() {
+                result.set(RoomResult.timedOut(roomId));
+            }
+        }, timeoutNanos, TimeUnit.NANOSECONDS);
+        Futures.addCallback(delivered, new FutureCallback<RoomResult>() {
+            public void onSuccess(RoomResult delivery) {
+                timeout.cancel(false);
+                result.set(delivery);
+            }
+
+            public void onFailure(Throwable t) {
+                timeout.cancel(false);
+                result.setException(t);
+            }
+        });
+        return result;
+    }
+
+    int size() {
+        return journal.size();
+    }
+
+    private void replay(List<OutboxEntry> entries) {
+        if (!entries.isEmpty()) {
+            logger.info("Replaying " + entries.size() + " undelivered Slack notification(s)");
+        }
+        Map<String, List<OutboxEntry>> rooms = new LinkedHashMap<String, List<OutboxEntry>>();
+        for (OutboxEntry entry : entries) {
+            String key = entry.getTeamDomain() + '/' + entry.getToken() + '/' + entry.getRoomId();
+            List<OutboxEntry> room = rooms.get(key);
+            if (room == null) {
+                room = new ArrayList<OutboxEntry>();
+                rooms.put(key, room);
+            }
+            room.add(entry);
+        }
+        for (List<OutboxEntry> room : rooms.values()) {
+            deliverInOrder(room, null);
+        }
+    }
+
+    /**
+     * @param chain entries for one room, to be sent in this order
+     * @param service what sends them, null to set one up for each entry as it was journaled
+     * @return the outcome of the last entry, or of the one that was given up on
+     */
+    private ListenableFuture<RoomResult> deliverInOrder(List<OutboxEntry> chain, StandardSlackService service) {
+        Delivery next = null;
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            OutboxEntry entry = chain.get(i);
+            StandardSlackService sender = service;
+            if (sender == null) {
+                // replayed entries of one room may come from different builds
+                sender = new StandardSlackService(entry.getTeamDomain(), entry.getToken(), entry.getRoomId());
+                sender.setOrigin(entry.getJob(), entry.getBuild());
+            }
+            next = new Delivery(entry, sender, next);
+        }
+        ListenableFuture<RoomResult> last = next.result;
+        for (Delivery delivery = next; delivery.next != null; delivery = delivery.next) {
+            last = delivery.next.result;
+        }
+        dispatch(next);
+        return last;
+    }
+
+    private void dispatch(final Delivery delivery) {
+        final OutboxEntry entry = delivery.entry;
+        ListenableFuture<RoomResult> sent = SlackCoalescer.get().submit(delivery.service, entry.getRoomId(),
+                new SlackAttachment(entry.getMessage(), entry.getColor()));
+        Futures.addCallback(sent, new FutureCallback<RoomResult>() {
+            public void onSuccess(RoomResult result) {
+                complete(delivery, result);
+            }
+
+            public void onFailure(Throwable t) {
+                complete(delivery, RoomResult.failure(entry.getRoomId(), RoomResult.NO_STATUS, t.toString()));
+            }
+        });
+    }
+
+    private void complete(final Delivery delivery, RoomResult result) {
+        OutboxEntry entry = delivery.entry;
+        boolean expired = System.currentTimeMillis() - entry.getCreatedAt() > MAX_AGE_MILLIS;
+        if (result.isRetryable() && !expired) {
+            long delay = Math.min(MAX_RETRY_DELAY_MILLIS, 1000L << Math.min(delivery.attempts++, 20));
+            Timer.get().schedule(new Runnable() {
+                public void run() {
+                    dispatch(delivery);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        if (!result.isSuccess()) {
+            logger.warning("Giving up on Slack notification to " + entry.getRoomId() + " on "
+                    + entry.getTeamDomain() + ": " + result);
+            delivery.service.deadLetter(result, new SlackAttachment(entry.getMessage(), entry.getColor()));
+        }
+        acknowledge(entry);
+        delivery.result.set(result);
+        Delivery next = delivery.next;
+        if (next == null) {
+            return;
+        }
+        if (result.isSuccess()) {
+            dispatch(next);
+            return;
+        }
+        // the rest would arrive out of order, or after something missing
+        for (; next != null; next = next.next) {
+            next.service.deadLetter(result, new SlackAttachment(next.entry.getMessage(), next.entry.getColor()));
+            acknowledge(next.entry);
+            next.result.set(result);
+        }
+    }
+
+    private void acknowledge(OutboxEntry entry) {
+        try {
+            journal.acknowledge(entry);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to acknowledge Slack notification in the outbox", e);
+        }
+    }
+
+    private void sync() {
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to sync the Slack outbox", e);
+        }
+    }
+
+    private static final class Delivery {
+        final OutboxEntry entry;
+        final StandardSlackService service;
+        /** Sent once this one has been accepted, null if this is the last for its room. */
+        final Delivery next;
+        final SettableFuture<RoomResult> result = SettableFuture.create();
+        int attempts;
+
+        Delivery(OutboxEntry entry, StandardSlackService service, Delivery next) {
+            this.entry = entry;
+            this.service = service;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package jenkins.plugins.slack;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Streams the Slack post body straight into a per-thread byte buffer, without building a JSON tree or
+ * intermediate strings. The buffer is reused for the next post made by the same thread.
+ */
+final class SlackPayloadEncoder {
+
+    static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
+    static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    /** Buffers that grew beyond this while encoding an unusually large post are not kept around. */
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+    private static final byte[] PAYLOAD_PARAMETER = "payload=".getBytes();
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    private SlackPayloadEncoder() {
+    }
+
+    /**
+     * Encodes the post as {@code application/json}, for endpoints that accept a JSON body.
+     * The entity is only valid until the calling thread encodes its next post.
+     */
+    static RequestEntity json(String roomId, List<SlackAttachment> attachments) throws IOException {
+        Buffers buffers = BUFFERS.get();
+        buffers.reset();
+        writeJson(buffers.json, roomId, attachments);
+        return new BufferEntity(buffers.json, JSON_CONTENT_TYPE);
+    }
+
+    /**
+     * Encodes the post as a form with the JSON in its {@code payload} parameter, as the jenkins-ci
+     * integration endpoint expects. The entity is only valid until the calling thread encodes its next post.
+     */
+    static RequestEntity form(String roomId, List<SlackAttachment> attachments) throws IOException {
+        Buffers buffers = BUFFERS.get();
+        buffers.reset();
+        writeJson(buffers.json, roomId, attachments);
+        buffers.form.write(PAYLOAD_PARAMETER);
+        urlEncode(buffers.json, buffers.form);
+        return new BufferEntity(buffers.form, FORM_CONTENT_TYPE);
+    }
+
+    static void writeJson(OutputStream out, String roomId, List<SlackAttachment> attachments) throws IOException {
+        JsonGenerator json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        json.writeStartObject();
+        json.writeStringField("channel", roomId);
+        json.writeArrayFieldStart("attachments");
+        for (SlackAttachment attachment : attachments) {
+            json.writeStartObject();
+            json.writeStringField("fallback", attachment.getMessage());
+            json.writeStringField("color", attachment.getColor());
+            json.writeArrayFieldStart("fields");
+            json.writeStartObject();
+            json.writeBooleanField("short", false);
+            json.writeStringField("value", attachment.getMessage());
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeArrayFieldStart("mrkdwn_in");
+            json.writeString("pretext");
+            json.writeString("text");
+            json.writeString("fields");
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.close();
+    }
+
+    /** application/x-www-form-urlencoded, applied to the already UTF-8 encoded bytes. */
+    private static void urlEncode(Buffer in, Buffer out) {
+        byte[] bytes = in.array();
+        for (int i = 0; i < in.size(); i++) {
+            int b = bytes[i] & 0xff;
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                    || b == '-' || b == '_' || b == '.' || b == '*') {
+                out.write(b);
+            } else if (b == ' ') {
+                out.write('+');
+            } else {
+                out.write('%');
+                out.write(HEX[b >> 4]);
+                out.write(HEX[b & 0x0f]);
+            }
+        }
+    }
+
+    private static final class Buffers {
+        Buffer json = new Buffer();
+        Buffer form = new Buffer();
+
+        void reset() {
+            if (json.array().length > MAX_RETAINED_BUFFER) {
+                json = new Buffer();
+            }
+            if (form.array().length > MAX_RETAINED_BUFFER) {
+                form = new Buffer();
+            }
+            json.reset();
+            form.reset();
+        }
+    }
+
+    /** Exposes its backing array so the body can be written without another copy. */
+    static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(4096);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private static final class BufferEntity implements RequestEntity {
+        private final Buffer buffer;
+        private final String contentType;
+
+        BufferEntity(Buffer buffer, String contentType) {
+            this.buffer = buffer;
+            this.contentType = contentType;
+        }
+
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        public void writeRequest(OutputStream out) throws IOException {
+            out.write(buffer.array(), 0, buffer.size());
+        }
+
+        public long getContentLength() {
+            return buffer.size();
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+}
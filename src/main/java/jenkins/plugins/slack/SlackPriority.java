@@ -0,0 +1,30 @@
+package jenkins.plugins.slack;
+
+import hudson.model.Result;
+
+/**
+ * Lanes of the {@link SlackDispatcher}, most urgent first.
+ */
+enum SlackPriority {
+    /** Failed builds: what someone has to act on. */
+    URGENT,
+    /** Unstable, aborted and not built builds, and anything not tied to a build. */
+    NORMAL,
+    /** Successful builds and start notifications. */
+    LOW;
+
+    /**
+     * @param result the build's result, null while it is still running
+     */
+    static SlackPriority of(Result result) {
+        if (result == null || result == Result.SUCCESS) {
+            return LOW;
+        }
+        // Result ranks not built and aborted as worse than failure, but nobody needs paging for them
+        return result == Result.FAILURE ? URGENT : NORMAL;
+    }
+
+    boolean isMoreUrgentThan(SlackPriority other) {
+        return ordinal() < other.ordinal();
+    }
+}
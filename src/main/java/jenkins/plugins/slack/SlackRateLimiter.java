@@ -0,0 +1,141 @@
+package jenkins.plugins.slack;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket per (team domain, room), so bursts towards one channel are spread out to what Slack accepts
+ * instead of being answered with HTTP 429 and lost.
+ *
+ * Each bucket is a single {@link AtomicLong} holding the theoretical arrival time of the next message (the
+ * generic cell rate algorithm), so reserving a slot is one CAS and no lock is shared between channels.
+ * A {@code Retry-After} from Slack pushes that time out. Buckets that have been idle for a while are dropped.
+ */
+public final class SlackRateLimiter {
+
+    static final double PERMITS_PER_SECOND = Double.parseDouble(
+            System.getProperty(SlackRateLimiter.class.getName() + ".permitsPerSecond", "1"));
+    static final int BURST = Integer.getInteger(SlackRateLimiter.class.getName() + ".burst", 3);
+
+    private static final long IDLE_EVICTION_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final int EVICTION_INTERVAL = 1024;
+
+    private static final SlackRateLimiter INSTANCE = new SlackRateLimiter(PERMITS_PER_SECOND, BURST);
+
+    private final long intervalNanos;
+    private final long burstToleranceNanos;
+    private final ConcurrentMap<String, AtomicLong> buckets = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicInteger reservations = new AtomicInteger();
+
+    SlackRateLimiter(double permitsPerSecond, int burst) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.burstToleranceNanos = intervalNanos * Math.max(0, burst - 1);
+    }
+
+    public static SlackRateLimiter get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Blocks until a message may be sent to the room. An interrupted wait sends right away.
+     *
+     * @param deadline {@link System#nanoTime()} by which the message must be sent
+     * @return false, without waiting or using up a slot, if the room's next slot is past the deadline
+     */
+    public boolean acquire(String teamDomain, String roomId, long deadline) {
+        long now = System.nanoTime();
+        long waitNanos = reserve(key(teamDomain, roomId), now, deadline - now);
+        if (waitNanos < 0) {
+            return false;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records Slack's {@code Retry-After} so no message goes to the room before it has passed.
+     */
+    public void penalize(String teamDomain, String roomId, long retryAfterMillis) {
+        penalize(key(teamDomain, roomId), System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+    }
+
+    /**
+     * @return how long the caller has to wait before sending, in nanoseconds
+     */
+    long reserve(String key, long now) {
+        return reserve(key, now, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return how long the caller has to wait before sending, in nanoseconds, or -1 if that would be longer
+     * than {@code maxWaitNanos}, in which case no slot is taken
+     */
+    long reserve(String key, long now, long maxWaitNanos) {
+        AtomicLong bucket = bucket(key, now);
+        while (true) {
+            long arrival = bucket.get();
+            long start = Math.max(arrival, now - burstToleranceNanos);
+            if (start - now > maxWaitNanos) {
+                return -1;
+            }
+            if (bucket.compareAndSet(arrival, start + intervalNanos)) {
+                if (reservations.incrementAndGet() % EVICTION_INTERVAL == 0) {
+                    evictIdle(now);
+                }
+                return Math.max(0, start - now);
+            }
+        }
+    }
+
+    void penalize(String key, long now, long retryAfterNanos) {
+        AtomicLong bucket = bucket(key, now);
+        long blockedUntil = now + retryAfterNanos;
+        while (true) {
+            long arrival = bucket.get();
+            if (arrival >= blockedUntil || bucket.compareAndSet(arrival, blockedUntil)) {
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    private AtomicLong bucket(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            AtomicLong created = new AtomicLong(now - burstToleranceNanos);
+            bucket = buckets.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    void evictIdle(long now) {
+        Iterator<Map.Entry<String, AtomicLong>> entries = buckets.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, AtomicLong> entry = entries.next();
+            if (now - entry.getValue().get() > IDLE_EVICTION_NANOS) {
+                buckets.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static String key(String teamDomain, String roomId) {
+        return teamDomain + '/' + roomId;
+    }
+}
@@ -0,0 +1,226 @@
+package jenkins.plugins.slack;
+
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The results of a job's most recent completed builds, kept so that deciding on a transition ("back to normal",
+ * "still failing") does not load earlier builds from disk. For each of the last {@link #CAPACITY} builds the
+ * ring holds its number, result and end time, together with the result of the latest non-aborted build and the
+ * end time of the latest successful build up to and including it. Asking about the build that just completed
+ * therefore only looks at the newest entry or two.
+ * <p>
+ * A job's history is loaded from its builds the first time it is asked for, and kept up to date by
+ * {@link SlackListener} from then on. Jobs that never notify Slack never get one.
+ */
+final class SlackResultHistory {
+
+    static final int CAPACITY = Integer.getInteger(SlackResultHistory.class.getName() + ".capacity", 32);
+
+    private static final byte NONE = -1;
+    /** Indexed by {@link Result#ordinal}. */
+    private static final Result[] RESULTS = {
+            Result.SUCCESS, Result.UNSTABLE, Result.FAILURE, Result.NOT_BUILT, Result.ABORTED
+    };
+
+    private static final Map<Job<?, ?>, SlackResultHistory> histories =
+            Collections.synchronizedMap(new WeakHashMap<Job<?, ?>, SlackResultHistory>());
+
+    private final int[] numbers;
+    private final byte[] results;
+    private final long[] endTimes;
+    private final byte[] lastNonAborted;
+    private final long[] lastSuccessEndTimes;
+    /** Index of the oldest entry. */
+    private int oldest;
+    private int size;
+    /** What was known before the oldest entry. */
+    private byte baseNonAborted = NONE;
+    private long baseSuccessEndTime = -1;
+
+    SlackResultHistory(int capacity) {
+        capacity = Math.max(1, capacity);
+        numbers = new int[capacity];
+        results = new byte[capacity];
+        endTimes = new long[capacity];
+        lastNonAborted = new byte[capacity];
+        lastSuccessEndTimes = new long[capacity];
+    }
+
+    /**
+     * The job's history, loaded from its builds if this is the first time it is asked for.
+     */
+    static SlackResultHistory of(Job<?, ?> job) {
+        SlackResultHistory history = histories.get(job);
+        if (history == null) {
+            SlackResultHistory loaded = load(job, CAPACITY);
+            synchronized (histories) {
+                history = histories.get(job);
+                if (history == null) {
+                    histories.put(job, loaded);
+                    history = loaded;
+                }
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Adds a completed build to its job's history, if the job has one.
+     */
+    static void recordIfTracked(Run<?, ?> run) {
+        SlackResultHistory history = histories.get(run.getParent());
+        if (history != null && run.getResult() != null) {
+            history.record(run.getNumber(), run.getResult(), endTimeOf(run));
+        }
+    }
+
+    static SlackResultHistory load(Job<?, ?> job, int capacity) {
+        SlackResultHistory history = new SlackResultHistory(capacity);
+        List<Run<?, ?>> recent = new ArrayList<Run<?, ?>>();
+        Run<?, ?> run = job.getLastCompletedBuild();
+        while (run != null && recent.size() < capacity) {
+            recent.add(run);
+            run = run.getPreviousCompletedBuild();
+        }
+        if (run != null) {
+            Run<?, ?> nonAborted = run;
+            while (nonAborted != null && nonAborted.getResult() == Result.ABORTED) {
+                nonAborted = nonAborted.getPreviousCompletedBuild();
+            }
+            Run<?, ?> success = run.getResult() == Result.SUCCESS ? run : run.getPreviousSuccessfulBuild();
+            history.seed(nonAborted != null ? nonAborted.getResult() : null,
+                    success != null ? endTimeOf(success) : -1);
+        }
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            Run<?, ?> completed = recent.get(i);
+            history.record(completed.getNumber(), completed.getResult(), endTimeOf(completed));
+        }
+        return history;
+    }
+
+    static long endTimeOf(Run<?, ?> run) {
+        return run.getStartTimeInMillis() + run.getDuration();
+    }
+
+    /**
+     * Sets what is known about the builds before the oldest entry.
+     */
+    synchronized void seed(Result lastNonAbortedResult, long lastSuccessEndTime) {
+        baseNonAborted = encode(lastNonAbortedResult);
+        baseSuccessEndTime = lastSuccessEndTime;
+        recompute(0);
+    }
+
+    synchronized void record(int number, Result result, long endTime) {
+        // builds mostly complete in order, so this rarely moves past the newest entry
+        int position = size;
+        while (position > 0 && numbers[index(position - 1)] > number) {
+            position--;
+        }
+        if (position > 0 && numbers[index(position - 1)] == number) {
+            position--;
+        } else {
+            if (size == numbers.length) {
+                if (position == 0) {
+                    return; // older than anything kept
+                }
+                dropOldest();
+                position--;
+            }
+            for (int i = size; i > position; i--) {
+                copy(index(i - 1), index(i));
+            }
+            size++;
+        }
+        int at = index(position);
+        numbers[at] = number;
+        results[at] = encode(result);
+        endTimes[at] = endTime;
+        recompute(position);
+    }
+
+    /**
+     * @return the result of the latest build before {@code number} that was not aborted, null if there is none
+     */
+    synchronized Result previousNonAbortedResult(int number) {
+        int position = before(number);
+        return decode(position < 0 ? baseNonAborted : lastNonAborted[index(position)]);
+    }
+
+    /**
+     * @return when the latest successful build before {@code number} ended, -1 if there is none
+     */
+    synchronized long lastSuccessEndTime(int number) {
+        int position = before(number);
+        return position < 0 ? baseSuccessEndTime : lastSuccessEndTimes[index(position)];
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the position of the newest entry for a build before {@code number}, -1 if there is none
+     */
+    private int before(int number) {
+        int position = size - 1;
+        while (position >= 0 && numbers[index(position)] >= number) {
+            position--;
+        }
+        return position;
+    }
+
+    private void recompute(int from) {
+        for (int position = from; position < size; position++) {
+            int at = index(position);
+            byte nonAborted = position == 0 ? baseNonAborted : lastNonAborted[index(position - 1)];
+            long successEndTime = position == 0 ? baseSuccessEndTime : lastSuccessEndTimes[index(position - 1)];
+            if (results[at] != Result.ABORTED.ordinal) {
+                nonAborted = results[at];
+            }
+            if (results[at] == Result.SUCCESS.ordinal) {
+                successEndTime = endTimes[at];
+            }
+            lastNonAborted[at] = nonAborted;
+            lastSuccessEndTimes[at] = successEndTime;
+        }
+    }
+
+    private void dropOldest() {
+        baseNonAborted = lastNonAborted[oldest];
+        baseSuccessEndTime = lastSuccessEndTimes[oldest];
+        oldest = (oldest + 1) % numbers.length;
+        size--;
+    }
+
+    private void copy(int from, int to) {
+        numbers[to] = numbers[from];
+        results[to] = results[from];
+        endTimes[to] = endTimes[from];
+        lastNonAborted[to] = lastNonAborted[from];
+        lastSuccessEndTimes[to] = lastSuccessEndTimes[from];
+    }
+
+    /**
+     * @param position 0 for the oldest entry
+     */
+    private int index(int position) {
+        return (oldest + position) % numbers.length;
+    }
+
+    private static byte encode(Result result) {
+        return result == null ? NONE : (byte) result.ordinal;
+    }
+
+    private static Result decode(byte code) {
+        return code == NONE ? null : RESULTS[code];
+    }
+}
@@ -0,0 +1,56 @@
+package jenkins.plugins.slack;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+import java.io.IOException;
+
+/**
+ * Sends an already encoded post to Slack. HTTP error statuses are returned, not thrown; an
+ * {@link IOException} means no response was received.
+ *
+ * @see StandardSlackService#getTransport()
+ */
+interface SlackTransport {
+
+    /** Selects the commons-httpclient backend, the default. */
+    String HTTP_CLIENT = "httpclient";
+    /** Selects the JDK {@link java.net.HttpURLConnection} backend. */
+    String URL_CONNECTION = "urlconnection";
+
+    Response post(String url, RequestEntity body, int readTimeoutMillis) throws IOException;
+
+    /**
+     * Sends a bodiless {@code HEAD} to the host of {@code url} and leaves the connection open for the next post,
+     * so that DNS, TCP, TLS and any proxy tunnel are already set up when a notification goes out.
+     *
+     * @return the HTTP status
+     */
+    int warm(String url, int readTimeoutMillis) throws IOException;
+
+    final class Response {
+        private final int statusCode;
+        private final String body;
+        private final String retryAfter;
+
+        Response(int statusCode, String body, String retryAfter) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.retryAfter = retryAfter;
+        }
+
+        int getStatusCode() {
+            return statusCode;
+        }
+
+        String getBody() {
+            return body;
+        }
+
+        /**
+         * @return the raw {@code Retry-After} header, or null
+         */
+        String getRetryAfter() {
+            return retryAfter;
+        }
+    }
+}
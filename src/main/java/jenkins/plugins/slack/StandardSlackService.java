@@ -2,27 +2,57 @@ package jenkins.plugins.slack;
 
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpStatus;
-import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
 
-import org.json.JSONObject;
-import org.json.JSONArray;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import jenkins.model.Jenkins;
-import hudson.ProxyConfiguration;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
-import org.apache.commons.httpclient.auth.AuthScope;
-
-public class StandardSlackService implements SlackService {
+public class StandardSlackService extends AbstractSlackService {
 
     private static final Logger logger = Logger.getLogger(StandardSlackService.class.getName());
 
+    static final int ROOM_PARALLELISM =
+            Integer.getInteger(StandardSlackService.class.getName() + ".roomParallelism", 4);
+
+    static final int MAX_THROTTLED_RETRIES = 3;
+    static final long DEFAULT_RETRY_AFTER_MILLIS = 1000L;
+    static final int MAX_ATTEMPTS = Integer.getInteger(StandardSlackService.class.getName() + ".maxAttempts", 3);
+    /** The jenkins-ci endpoint expects a form-encoded payload; enable for endpoints that take a raw JSON body. */
+    static final boolean JSON_BODY = Boolean.getBoolean(StandardSlackService.class.getName() + ".jsonBody");
+    static final long BASE_BACKOFF_MILLIS = 500L;
+    static final long MAX_BACKOFF_MILLIS = 8000L;
+    /** {@link SlackTransport#HTTP_CLIENT} or {@link SlackTransport#URL_CONNECTION}. */
+    static final String TRANSPORT = System.getProperty(StandardSlackService.class.getName() + ".transport",
+            SlackTransport.HTTP_CLIENT);
+
     private String host = "slack.com";
     private String teamDomain;
     private String token;
     private String[] roomIds;
+    private String originJob;
+    private int originBuild;
+    private SlackPriority priority = SlackPriority.NORMAL;
+    /** Null unless {@link #publish} deduplicates, see {@link #setDeduplicationScope}. */
+    private String deduplicationScope;
 
     public StandardSlackService(String teamDomain, String token, String roomId) {
         super();
@@ -36,80 +66,534 @@ public class StandardSlackService implements SlackService {
     }
 
     public boolean publish(String message, String color) {
-        boolean result = true;
-        for (String roomId : roomIds) {
-            String url = "https://" + teamDomain + "." + host + "/services/hooks/jenkins-ci?token=" + token;
-            logger.info("Posting: to " + roomId + " on " + teamDomain + " using " + url +": " + message + " " + color);
-            HttpClient client = getHttpClient();
-            PostMethod post = new PostMethod(url);
-            JSONObject json = new JSONObject();
+        PublishResult result;
+        long dedupWindowNanos = SlackDeduplicator.windowNanos();
+        if (deduplicationScope == null || dedupWindowNanos <= 0) {
+            result = publishToRooms(message, color, newDeadline());
+        } else {
+            List<RoomResult> suppressed = new ArrayList<RoomResult>();
+            String[] rooms = unseenRooms(message, color, dedupWindowNanos, suppressed);
+            result = withSuppressed(publishToRooms(rooms, message, color, newDeadline()), suppressed, message, color);
+        }
+        if (roomIds.length > 1 && !result.isSuccess()) {
+            logger.warning("Slack post to " + teamDomain + " failed for " + result.getFailures().size()
+                    + " of " + roomIds.length + " rooms: " + result.getFailures());
+        }
+        return result.isSuccess();
+    }
+
+    public ListenableFuture<PublishResult> publishAsync(String message, String color) {
+        return publishAsync(Collections.singletonList(message), color);
+    }
 
+    /**
+     * Sends {@code messages} to every room one after the other, such as a status followed by its details.
+     * Messages too large for one post are sent as several parts. Each post only goes out once the one before it
+     * has been delivered. Rooms that were sent the first message within the deduplication window are skipped
+     * altogether and reported as suppressed.
+     */
+    ListenableFuture<PublishResult> publishAsync(final List<String> messages, final String color) {
+        long dedupWindowNanos = SlackDeduplicator.windowNanos();
+        if (dedupWindowNanos <= 0) {
+            return publishAsync(roomIds, messages, color);
+        }
+        final String message = messages.get(0);
+        final List<RoomResult> suppressed = new ArrayList<RoomResult>();
+        String[] rooms = unseenRooms(message, color, dedupWindowNanos, suppressed);
+        return Futures.transform(publishAsync(rooms, messages, color), new Function<PublishResult, PublishResult>() {
+            public PublishResult apply(PublishResult result) {
+                return withSuppressed(result, suppressed, message, color);
+            }
+        });
+    }
+
+    private ListenableFuture<PublishResult> publishAsync(String[] rooms, List<String> messages, String color) {
+        if (rooms.length == 0) {
+            return Futures.immediateFuture(new PublishResult(Collections.<RoomResult>emptyList()));
+        }
+        List<String> parts = new ArrayList<String>();
+        for (String message : messages) {
+            parts.addAll(SlackMessageSplitter.split(message));
+        }
+        SlackOutbox outbox = SlackOutbox.get();
+        if (outbox != null) {
             try {
-                JSONObject field = new JSONObject();
-                field.put("short", false);
-                field.put("value", message);
-
-                JSONArray fields = new JSONArray();
-                fields.put(field);
-
-                JSONObject attachment = new JSONObject();
-                attachment.put("fallback", message);
-                attachment.put("color", color);
-                attachment.put("fields", fields);
-                JSONArray mrkdwn = new JSONArray();
-                mrkdwn.put("pretext");
-                mrkdwn.put("text");
-                mrkdwn.put("fields");
-                attachment.put("mrkdwn_in", mrkdwn);
-                JSONArray attachments = new JSONArray();
-                attachments.put(attachment);
-
-                json.put("channel", roomId);
-                json.put("attachments", attachments);
-
-                post.addParameter("payload", json.toString());
-                post.getParams().setContentCharset("UTF-8");
-                int responseCode = client.executeMethod(post);
-                String response = post.getResponseBodyAsString();
-                if(responseCode != HttpStatus.SC_OK) {
-                    logger.log(Level.WARNING, "Slack post may have failed. Response: " + response);
-                    result = false;
+                return outbox.submit(this, rooms, parts, color);
+            } catch (IOException e) {
+                // nothing was journaled, so nothing will be replayed either
+                logger.log(Level.WARNING, "Unable to journal Slack notification, sending it without the outbox", e);
+            }
+        }
+        if (parts.size() == 1) {
+            return publishPartAsync(rooms, parts.get(0), color);
+        }
+        return publishInOrder(rooms, parts, 0, color);
+    }
+
+    private ListenableFuture<PublishResult> publishInOrder(final String[] rooms, final List<String> parts,
+                                                           final int index, final String color) {
+        ListenableFuture<PublishResult> part = publishPartAsync(rooms, parts.get(index), color);
+        if (index + 1 == parts.size()) {
+            return part;
+        }
+        return Futures.transform(part, new AsyncFunction<PublishResult, PublishResult>() {
+            public ListenableFuture<PublishResult> apply(PublishResult result) {
+                return result.isSuccess() ? publishInOrder(rooms, parts, index + 1, color)
+                        : Futures.immediateFuture(result);
+            }
+        });
+    }
+
+    private ListenableFuture<PublishResult> publishPartAsync(String[] rooms, String message, String color) {
+        SlackCoalescer coalescer = SlackCoalescer.get();
+        if (coalescer.isEnabled()) {
+            final SlackAttachment attachment = new SlackAttachment(message, color);
+            List<ListenableFuture<RoomResult>> sent = new ArrayList<ListenableFuture<RoomResult>>();
+            for (final String roomId : rooms) {
+                ListenableFuture<RoomResult> room = coalescer.submit(this, roomId, attachment);
+                Futures.addCallback(room, new FutureCallback<RoomResult>() {
+                    public void onSuccess(RoomResult result) {
+                        if (!result.isSuccess()) {
+                            deadLetter(result, attachment);
+                        }
+                    }
+
+                    public void onFailure(Throwable t) {
+                        deadLetter(RoomResult.failure(roomId, RoomResult.NO_STATUS, t.toString()), attachment);
+                    }
+                });
+                sent.add(room);
+            }
+            return Futures.transform(Futures.allAsList(sent), PublishResult.FROM_ROOM_RESULTS);
+        }
+        final SlackAttachment attachment = new SlackAttachment(message, color);
+        final long deadline = newDeadline();
+        List<ListenableFuture<RoomResult>> sent = new ArrayList<ListenableFuture<RoomResult>>();
+        for (final String roomId : rooms) {
+            Callable<RoomResult> post = new Callable<RoomResult>() {
+                public RoomResult call() {
+                    RoomResult result = publishToRoom(roomId, Collections.singletonList(attachment), deadline);
+                    if (!result.isSuccess()) {
+                        deadLetter(result, attachment);
+                    }
+                    return result;
                 }
-                else {
-                    logger.info("Posting succeeded");
+            };
+            try {
+                sent.add(SlackDispatcher.forTeam(teamDomain).submit(priority, orderingKey(roomId), post));
+            } catch (RejectedExecutionException e) {
+                RoomResult result = RoomResult.failure(roomId, RoomResult.NO_STATUS, e.getMessage());
+                deadLetter(result, attachment);
+                sent.add(Futures.immediateFuture(result));
+            }
+        }
+        return Futures.transform(Futures.allAsList(sent), PublishResult.FROM_ROOM_RESULTS);
+    }
+
+    /**
+     * Posts to every room, running up to {@link #ROOM_PARALLELISM} posts at once. The calling thread
+     * takes part in the fan-out, so a single room never leaves the current thread, and once it runs out of
+     * rooms only the helpers that have started are waited for. Rooms not posted to by the deadline are given
+     * up and reported as timed out. An oversize message is split into parts that are posted to each room in
+     * order. Nothing is deduplicated: every room is sent the message, so that a success really means it was
+     * delivered.
+     */
+    PublishResult publishToRooms(String message, String color, long deadline) {
+        return publishToRooms(roomIds, message, color, deadline);
+    }
+
+    private PublishResult publishToRooms(String[] rooms, String message, String color, long deadline) {
+        List<SlackAttachment> parts = new ArrayList<SlackAttachment>();
+        for (String part : SlackMessageSplitter.split(message)) {
+            parts.add(new SlackAttachment(part, color));
+        }
+        RoomFanOut fanOut = new RoomFanOut(rooms, parts, deadline);
+        List<Future<Void>> helpers = new ArrayList<Future<Void>>();
+        for (int i = 1; i < fanOut.workerCount(); i++) {
+            helpers.add(SlackExecutors.forTeam(teamDomain).submit(fanOut));
+        }
+        fanOut.call();
+        for (Future<Void> helper : helpers) {
+            // every room has been claimed, so a helper that has not started yet has nothing left to do
+            if (helper.cancel(false)) {
+                continue;
+            }
+            try {
+                helper.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                helper.cancel(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                logger.log(Level.WARNING, "Slack post to " + teamDomain + " failed", e.getCause());
+            }
+        }
+        return fanOut.result();
+    }
+
+    /**
+     * @return the rooms that have not been sent this message within the window; the others are added to
+     * {@code suppressed}
+     */
+    private String[] unseenRooms(String message, String color, long windowNanos, List<RoomResult> suppressed) {
+        SlackDeduplicator deduplicator = SlackDeduplicator.get();
+        long now = System.nanoTime();
+        List<String> unseen = new ArrayList<String>(roomIds.length);
+        for (String roomId : roomIds) {
+            if (deduplicator.firstSeen(fingerprint(roomId, message, color), now, windowNanos)) {
+                unseen.add(roomId);
+            } else {
+                SlackMetrics.forRoom(teamDomain, roomId).suppressed();
+                suppressed.add(RoomResult.suppressed(roomId));
+            }
+        }
+        if (!suppressed.isEmpty() && logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Not sending duplicate Slack message to {0}", suppressed);
+        }
+        return unseen.toArray(new String[unseen.size()]);
+    }
+
+    private long fingerprint(String roomId, String message, String color) {
+        return SlackDeduplicator.fingerprint(deduplicationScope, teamDomain, token, roomId, message, color);
+    }
+
+    /**
+     * Adds the suppressed rooms to the result. Rooms the message could not be delivered to are forgotten, so
+     * sending it again is not taken for a duplicate.
+     */
+    private PublishResult withSuppressed(PublishResult result, List<RoomResult> suppressed, String message,
+                                         String color) {
+        for (RoomResult failure : result.getFailures()) {
+            SlackDeduplicator.get().forget(fingerprint(failure.getRoomId(), message, color));
+        }
+        if (suppressed.isEmpty()) {
+            return result;
+        }
+        List<RoomResult> roomResults = new ArrayList<RoomResult>(result.getRoomResults());
+        roomResults.addAll(suppressed);
+        return new PublishResult(roomResults);
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} by which a notification starting now has to be done
+     */
+    static long newDeadline() {
+        return System.nanoTime() + SlackClientConfiguration.get().getNotificationTimeoutNanos();
+    }
+
+    /**
+     * Shared work list for one message: every worker keeps claiming the next unposted room until none
+     * are left, so the number of concurrent posts equals the number of workers started. The parts of a
+     * split message go to a room one after the other, stopping at the first that fails; that part and the
+     * ones after it become dead letters.
+     */
+    private final class RoomFanOut implements Callable<Void> {
+
+        private final String[] rooms;
+        private final List<SlackAttachment> parts;
+        private final long deadline;
+        private final AtomicReferenceArray<RoomResult> results;
+        private final AtomicInteger nextRoom = new AtomicInteger();
+
+        RoomFanOut(String[] rooms, List<SlackAttachment> parts, long deadline) {
+            this.rooms = rooms;
+            this.parts = parts;
+            this.deadline = deadline;
+            this.results = new AtomicReferenceArray<RoomResult>(rooms.length);
+        }
+
+        int workerCount() {
+            return Math.max(1, Math.min(ROOM_PARALLELISM, rooms.length));
+        }
+
+        public Void call() {
+            int index;
+            while ((index = nextRoom.getAndIncrement()) < rooms.length) {
+                RoomResult result = null;
+                for (int part = 0; part < parts.size(); part++) {
+                    result = publishToRoom(rooms[index], Collections.singletonList(parts.get(part)), deadline);
+                    if (!result.isSuccess()) {
+                        for (SlackAttachment undelivered : parts.subList(part, parts.size())) {
+                            deadLetter(result, undelivered);
+                        }
+                        break;
+                    }
                 }
-            } catch (Exception e) {
-                logger.log(Level.WARNING, "Error posting to Slack", e);
-                result = false;
+                results.set(index, result);
+            }
+            return null;
+        }
+
+        /**
+         * Rooms whose post had not finished when the result was taken count as timed out.
+         */
+        PublishResult result() {
+            RoomResult[] snapshot = new RoomResult[rooms.length];
+            for (int i = 0; i < snapshot.length; i++) {
+                RoomResult result = results.get(i);
+                snapshot[i] = result != null ? result : RoomResult.timedOut(rooms[i]);
+            }
+            return new PublishResult(Arrays.asList(snapshot));
+        }
+    }
+
+    /**
+     * Posts to one room, waiting for the room's rate limit and the team's {@link SlackConcurrencyLimiter} first.
+     * When Slack still answers with HTTP 429 the message is held back for the requested {@code Retry-After} and
+     * sent again rather than dropped. Other retryable failures are retried with jittered exponential backoff
+     * while the team's circuit stays closed. All of it has to fit in the notification timeout; once that has run
+     * out the room is reported as timed out.
+     */
+    RoomResult publishToRoom(String roomId, String message, String color) {
+        return publishToRoom(roomId, Collections.singletonList(new SlackAttachment(message, color)));
+    }
+
+    RoomResult publishToRoom(String roomId, List<SlackAttachment> attachments) {
+        return publishToRoom(roomId, attachments, newDeadline());
+    }
+
+    RoomResult publishToRoom(String roomId, List<SlackAttachment> attachments, long deadline) {
+        SlackRateLimiter rateLimiter = SlackRateLimiter.get();
+        SlackCircuitBreaker circuitBreaker = SlackCircuitBreaker.forTeam(teamDomain);
+        SlackConcurrencyLimiter concurrencyLimiter = SlackConcurrencyLimiter.forTeam(teamDomain);
+        SlackMetrics.Meter meter = SlackMetrics.forRoom(teamDomain, roomId);
+        int throttled = 0;
+        int failedAttempts = 0;
+        while (true) {
+            if (System.nanoTime() - deadline >= 0) {
+                meter.timedOut();
+                return RoomResult.timedOut(roomId);
+            }
+            if (!circuitBreaker.allowRequest()) {
+                return RoomResult.failure(roomId, RoomResult.NO_STATUS,
+                        "Circuit for Slack team " + teamDomain + " is open");
+            }
+            if (!rateLimiter.acquire(teamDomain, roomId, deadline) || !concurrencyLimiter.acquire(deadline)) {
+                // nothing was posted, so this says nothing about Slack either way
+                circuitBreaker.releaseProbe();
+                meter.timedOut();
+                return RoomResult.timedOut(roomId);
+            }
+            long started = System.nanoTime();
+            RoomResult result = RoomResult.timedOut(roomId);
+            try {
+                result = postToRoom(roomId, attachments, deadline, meter);
             } finally {
-                post.releaseConnection();
+                concurrencyLimiter.release(result, System.nanoTime() - started);
+            }
+            circuitBreaker.record(result);
+            if (result.isThrottled()) {
+                if (throttled++ >= MAX_THROTTLED_RETRIES) {
+                    return result;
+                }
+                if (logger.isLoggable(Level.INFO)) {
+                    logger.log(Level.INFO, "Slack throttled posting to {0} on {1}, retrying in {2}ms",
+                            new Object[]{roomId, teamDomain, result.getRetryAfterMillis()});
+                }
+                rateLimiter.penalize(teamDomain, roomId, result.getRetryAfterMillis());
+                continue;
+            }
+            if (!result.isRetryable() || ++failedAttempts >= MAX_ATTEMPTS) {
+                return result;
+            }
+            long backoff = backoffMillis(failedAttempts);
+            if (TimeUnit.MILLISECONDS.toNanos(backoff) >= deadline - System.nanoTime()) {
+                return result;
+            }
+            if (logger.isLoggable(Level.INFO)) {
+                logger.log(Level.INFO, "Retrying post to {0} on {1} in {2}ms after {3}",
+                        new Object[]{roomId, teamDomain, backoff, result});
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result;
             }
         }
-        return result;
     }
 
-    protected HttpClient getHttpClient() {
-        HttpClient client = new HttpClient();
-        if (Jenkins.getInstance() != null) {
-            ProxyConfiguration proxy = Jenkins.getInstance().proxy;
-            if (proxy != null) {
-                client.getHostConfiguration().setProxy(proxy.name, proxy.port);
-                String username = proxy.getUserName();
-                String password = proxy.getPassword();
-                // Consider it to be passed if username specified. Sufficient?
-                if (username != null && !"".equals(username.trim())) {
-                    logger.info("Using proxy authentication (user=" + username + ")");
-                    // http://hc.apache.org/httpclient-3.x/authentication.html#Proxy_Authentication
-                    // and
-                    // http://svn.apache.org/viewvc/httpcomponents/oac.hc3x/trunk/src/examples/BasicAuthenticationExample.java?view=markup
-                    client.getState().setProxyCredentials(AuthScope.ANY,
-                        new UsernamePasswordCredentials(username, password));
+    /**
+     * Keeps an undelivered build notification for replay, if Slack may well accept it later. Other posts, such
+     * as a connection test or a pipeline step, report the failure to whoever made them, and a post Slack
+     * rejected would only be rejected again.
+     */
+    void deadLetter(RoomResult failure, SlackAttachment attachment) {
+        if (originJob == null || !failure.isRetryable()) {
+            return;
+        }
+        SlackDeadLetters.get().add(teamDomain, token, failure.getRoomId(), attachment.getMessage(),
+                attachment.getColor(), failure.toString(), originJob, originBuild);
+    }
+
+    /**
+     * Full jitter: a random delay between zero and the exponentially growing cap, so that many builds failing
+     * at the same moment do not retry in lockstep.
+     */
+    static long backoffMillis(int failedAttempts) {
+        long cap = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(failedAttempts - 1, 16));
+        return (long) (Math.random() * cap);
+    }
+
+    RoomResult postToRoom(String roomId, List<SlackAttachment> attachments, long deadline,
+                          SlackMetrics.Meter meter) {
+        String url = "https://" + teamDomain + "." + host + "/services/hooks/jenkins-ci?token=" + token;
+        SlackClientConfiguration configuration = SlackClientConfiguration.get();
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remainingMillis <= 0) {
+            meter.timedOut();
+            return RoomResult.timedOut(roomId);
+        }
+
+        long started = 0;
+        boolean inFlight = false;
+        try {
+            RequestEntity body = JSON_BODY ? SlackPayloadEncoder.json(roomId, attachments)
+                    : SlackPayloadEncoder.form(roomId, attachments);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "Posting to {0} on {1} using {2}: {3} attachment(s), {4} bytes",
+                        new Object[]{roomId, teamDomain, redact(url), attachments.size(), body.getContentLength()});
+                if (logger.isLoggable(Level.FINEST)) {
+                    for (SlackAttachment attachment : attachments) {
+                        logger.log(Level.FINEST, "Attachment ({0}): {1}",
+                                new Object[]{attachment.getColor(), attachment.getMessage()});
+                    }
+                }
+            }
+            SlackTransport transport = getTransport();
+            started = meter.started();
+            inFlight = true;
+            SlackTransport.Response response = transport.post(url, body,
+                    (int) Math.min(configuration.getReadTimeoutMillis(), remainingMillis));
+            int responseCode = response.getStatusCode();
+            inFlight = false;
+            meter.completed(started, responseCode);
+            if (responseCode == RoomResult.SC_TOO_MANY_REQUESTS) {
+                return RoomResult.throttled(roomId, getRetryAfterMillis(response.getRetryAfter()), response.getBody());
+            }
+            if(responseCode != HttpStatus.SC_OK) {
+                if (logger.isLoggable(Level.WARNING)) {
+                    logger.log(Level.WARNING, "Slack post to {0} on {1} may have failed. HTTP {2}, response: {3}",
+                            new Object[]{roomId, teamDomain, responseCode, response.getBody()});
                 }
+                return RoomResult.failure(roomId, responseCode, response.getBody());
+            }
+            else {
+                logger.log(Level.FINE, "Posting to {0} succeeded", roomId);
+                return RoomResult.success(roomId, responseCode);
+            }
+        } catch (Exception e) {
+            if (inFlight) {
+                meter.failed(started, e);
+            }
+            logger.log(Level.WARNING, "Error posting to " + roomId + " on " + teamDomain, e);
+            return RoomResult.failure(roomId, RoomResult.NO_STATUS, e.toString());
+        }
+    }
+
+    /**
+     * Hides the integration token, which grants anyone posting rights to the team.
+     */
+    static String redact(String url) {
+        return url.replaceAll("([?&]token=)[^&]*", "$1****");
+    }
+
+    private static long getRetryAfterMillis(String retryAfter) {
+        if (retryAfter != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+            } catch (NumberFormatException e) {
+                logger.fine("Ignoring unparseable Retry-After: " + retryAfter);
             }
         }
+        return DEFAULT_RETRY_AFTER_MILLIS;
+    }
+
+    /**
+     * The backend selected by the {@code transport} system property. commons-httpclient stays the default.
+     */
+    SlackTransport getTransport() {
+        if (SlackTransport.URL_CONNECTION.equals(TRANSPORT)) {
+            return UrlConnectionTransport.INSTANCE;
+        }
+        return new HttpClientTransport(getHttpClient(), SlackClientConfiguration.get().getConnectTimeoutMillis());
+    }
+
+    /**
+     * Opens a connection to this service's team host, or keeps an open one from going idle.
+     *
+     * @return the HTTP status of the warm-up request
+     * @see SlackConnectionWarmer
+     */
+    int warm() throws IOException {
+        return getTransport().warm("https://" + teamDomain + "." + host + "/",
+                SlackClientConfiguration.get().getReadTimeoutMillis());
+    }
+
+    protected HttpClient getHttpClient() {
+        HttpClient client = SlackConnectionPool.newHttpClient();
+        SlackClientConfiguration.get().configure(client);
         return client;
     }
 
+    String getTeamDomain() {
+        return teamDomain;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    String[] getRoomIds() {
+        return roomIds;
+    }
+
+    /**
+     * Records which build the notifications are about, so undelivered ones can be traced back to it.
+     */
+    void setOrigin(String job, int build) {
+        this.originJob = job;
+        this.originBuild = build;
+    }
+
+    /**
+     * Makes {@link #publish} skip rooms that were sent the same message under the same scope within the
+     * deduplication window, such as a pipeline step that a {@code retry} block runs again. Other scopes, such as
+     * another build, still get it sent. Without a scope, {@link #publish} sends every message.
+     */
+    public void setDeduplicationScope(String scope) {
+        this.deduplicationScope = scope;
+    }
+
+    /**
+     * Sets the lane asynchronous posts of this service wait in, see {@link SlackDispatcher}.
+     */
+    void setPriority(SlackPriority priority) {
+        this.priority = priority;
+    }
+
+    SlackPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Posts about the same build to the same room are sent in the order they were made.
+     *
+     * @return the key for {@link SlackDispatcher}, or null if this service is not posting about a build
+     */
+    String orderingKey(String roomId) {
+        return originJob == null ? null : teamDomain + '/' + roomId + '/' + originJob + '#' + originBuild;
+    }
+
+    String getOriginJob() {
+        return originJob;
+    }
+
+    int getOriginBuild() {
+        return originBuild;
+    }
+
     void setHost(String host) {
         this.host = host;
     }
@@ -0,0 +1,81 @@
+package jenkins.plugins.slack;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Posts through the JDK's {@link HttpURLConnection}. Connections are kept alive in the JDK's own per-host cache
+ * (sized by the {@code http.maxConnections} system property), which is shared with the rest of Jenkins. Each
+ * response is read to the end so its connection can go back to that cache.
+ */
+final class UrlConnectionTransport implements SlackTransport {
+
+    static final UrlConnectionTransport INSTANCE = new UrlConnectionTransport();
+
+    private UrlConnectionTransport() {
+    }
+
+    public Response post(String url, RequestEntity body, int readTimeoutMillis) throws IOException {
+        HttpURLConnection connection = open(url, readTimeoutMillis);
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", body.getContentType());
+        connection.setFixedLengthStreamingMode((int) body.getContentLength());
+
+        OutputStream out = connection.getOutputStream();
+        try {
+            body.writeRequest(out);
+        } finally {
+            out.close();
+        }
+
+        int statusCode;
+        InputStream in;
+        try {
+            statusCode = connection.getResponseCode();
+            in = statusCode >= HttpURLConnection.HTTP_BAD_REQUEST ? connection.getErrorStream()
+                    : connection.getInputStream();
+        } catch (IOException e) {
+            // drain what there is so the connection can still be reused
+            IOUtils.closeQuietly(connection.getErrorStream());
+            throw e;
+        }
+        String response = null;
+        if (in != null) {
+            try {
+                response = IOUtils.toString(in, "UTF-8");
+            } finally {
+                in.close();
+            }
+        }
+        return new Response(statusCode, response, connection.getHeaderField("Retry-After"));
+    }
+
+    public int warm(String url, int readTimeoutMillis) throws IOException {
+        HttpURLConnection connection = open(url, readTimeoutMillis);
+        connection.setRequestMethod("HEAD");
+        int statusCode = connection.getResponseCode();
+        // a HEAD response has no body; closing the stream hands the connection back to the keep-alive cache
+        IOUtils.closeQuietly(statusCode >= HttpURLConnection.HTTP_BAD_REQUEST ? connection.getErrorStream()
+                : connection.getInputStream());
+        return statusCode;
+    }
+
+    private static HttpURLConnection open(String url, int readTimeoutMillis) throws IOException {
+        SlackClientConfiguration configuration = SlackClientConfiguration.get();
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection(configuration.getProxy());
+        connection.setConnectTimeout(configuration.getConnectTimeoutMillis());
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setUseCaches(false);
+        if (configuration.getProxyAuthorization() != null) {
+            connection.setRequestProperty("Proxy-Authorization", configuration.getProxyAuthorization());
+        }
+        return connection;
+    }
+}
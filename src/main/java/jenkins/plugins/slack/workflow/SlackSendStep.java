@@ -3,6 +3,7 @@ package jenkins.plugins.slack.workflow;
 import hudson.AbortException;
 import hudson.Extension;
 import hudson.Util;
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import jenkins.model.Jenkins;
 import jenkins.plugins.slack.Messages;
@@ -115,6 +116,9 @@ public class SlackSendStep extends AbstractStepImpl {
         @StepContextParameter
         transient TaskListener listener;
 
+        @StepContextParameter
+        transient Run<?, ?> run;
+
         @Override
         protected Void run() throws Exception {
 
@@ -137,6 +141,10 @@ public class SlackSendStep extends AbstractStepImpl {
             listener.getLogger().println(Messages.SlackSendStepConfig(step.teamDomain == null, step.token == null, step.channel == null, step.color == null));
 
             SlackService slackService = getSlackService(team, token, channel);
+            if (slackService instanceof StandardSlackService && run != null) {
+                // a retry of the step in this build sends nothing new, the same step in another build does
+                ((StandardSlackService) slackService).setDeduplicationScope(run.getExternalizableId());
+            }
             boolean publishSuccess = slackService.publish(step.message, color);
             if (!publishSuccess && step.failOnError) {
                 throw new AbortException(Messages.NotificationFailed());
@@ -4,16 +4,18 @@ import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpStatus;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class HttpClientStub extends HttpClient {
 
-    private int numberOfCallsToExecuteMethod;
+    private final AtomicInteger numberOfCallsToExecuteMethod = new AtomicInteger();
     private int httpStatus;
     private boolean failAlternateResponses = false;
 
     @Override
     public int executeMethod(HttpMethod httpMethod) {
-        numberOfCallsToExecuteMethod++;
-        if (failAlternateResponses && (numberOfCallsToExecuteMethod % 2 == 0)) {
+        int call = numberOfCallsToExecuteMethod.incrementAndGet();
+        if (failAlternateResponses && (call % 2 == 0)) {
             return HttpStatus.SC_NOT_FOUND;
         } else {
             return httpStatus;
@@ -21,7 +23,7 @@ public class HttpClientStub extends HttpClient {
     }
 
     public int getNumberOfCallsToExecuteMethod() {
-        return numberOfCallsToExecuteMethod;
+        return numberOfCallsToExecuteMethod.get();
     }
 
     public void setHttpStatus(int httpStatus) {
@@ -0,0 +1,149 @@
+package jenkins.plugins.slack;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // tokens are journaled encrypted with the Jenkins instance's key
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @Test
+    public void unacknowledgedEntriesAreReplayedInOrder() throws IOException {
+        File directory = folder.newFolder("outbox");
+        OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024, 1);
+        assertTrue(journal.open().isEmpty());
+        OutboxEntry first = journal.append("team", "token", "#room1", "first", "good");
+        journal.append("team", "token", "#room2", "second", "danger");
+        journal.acknowledge(first);
+        journal.append("team", "token", "#room3", "third", "warning");
+        journal.close();
+
+        List<OutboxEntry> replayed = new OutboxJournal(directory, 1024 * 1024, 1).open();
+        assertEquals(2, replayed.size());
+        assertEquals("second", replayed.get(0).getMessage());
+        assertEquals("#room2", replayed.get(0).getRoomId());
+        assertEquals("third", replayed.get(1).getMessage());
+    }
+
+    @Test
+    public void acknowledgedSegmentsAreCompacted() throws IOException {
+        File directory = folder.newFolder("outbox");
+        // tiny segments so every append rotates
+        OutboxJournal journal = new OutboxJournal(directory, 1, 1);
+        journal.open();
+        OutboxEntry first = journal.append("team", "token", "#room", "first", "good");
+        OutboxEntry second = journal.append("team", "token", "#room", "second", "good");
+        assertEquals(3, directory.list().length);
+        journal.acknowledge(second);
+        assertEquals(3, directory.list().length);
+        journal.acknowledge(first);
+        assertEquals(1, directory.list().length);
+        assertEquals(0, journal.size());
+        journal.close();
+    }
+
+    @Test
+    public void tornWriteAtTheEndOfASegmentIsIgnored() throws IOException {
+        File directory = folder.newFolder("outbox");
+        OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024, 1);
+        journal.open();
+        journal.append("team", "token", "#room", "intact", "good");
+        journal.append("team", "token", "#room", "torn", "good");
+        journal.close();
+
+        File segment = directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+
+        List<OutboxEntry> replayed = new OutboxJournal(directory, 1024 * 1024, 1).open();
+        assertEquals(1, replayed.size());
+        assertEquals("intact", replayed.get(0).getMessage());
+    }
+
+    @Test
+    public void batchIsReplayedRoomByRoom() throws IOException {
+        File directory = folder.newFolder("outbox");
+        OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024, 1);
+        journal.open();
+        List<OutboxEntry> entries = journal.appendAll("team", "token", new String[]{"#room1", "#room2"},
+                Arrays.asList("status", "commits"), "good", "job", 7);
+        assertEquals(4, entries.size());
+        journal.acknowledge(entries.get(0));
+        journal.close();
+
+        List<OutboxEntry> replayed = new OutboxJournal(directory, 1024 * 1024, 1).open();
+        assertEquals(3, replayed.size());
+        assertEquals("#room1", replayed.get(0).getRoomId());
+        assertEquals("commits", replayed.get(0).getMessage());
+        assertEquals("#room2", replayed.get(1).getRoomId());
+        assertEquals("status", replayed.get(1).getMessage());
+        assertEquals("commits", replayed.get(2).getMessage());
+        assertEquals(7, replayed.get(2).getBuild());
+    }
+
+    @Test
+    public void tornBatchIsDroppedAsAWhole() throws IOException {
+        File directory = folder.newFolder("outbox");
+        OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024, 1);
+        journal.open();
+        journal.append("team", "token", "#room", "intact", "good");
+        journal.appendAll("team", "token", new String[]{"#room"}, Arrays.asList("part 1", "part 2"), "good",
+                null, 0);
+        journal.close();
+
+        File segment = directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+
+        List<OutboxEntry> replayed = new OutboxJournal(directory, 1024 * 1024, 1).open();
+        assertEquals(1, replayed.size());
+        assertEquals("intact", replayed.get(0).getMessage());
+    }
+
+    @Test
+    public void originOfTheNotificationIsKept() throws IOException {
+        File directory = folder.newFolder("outbox");
+        OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024, 1);
+        journal.open();
+        journal.append("team", "token", "#room", "message", "good", "folder/job", 42);
+        journal.close();
+
+        OutboxEntry replayed = new OutboxJournal(directory, 1024 * 1024, 1).open().get(0);
+        assertEquals("folder/job", replayed.getJob());
+        assertEquals(42, replayed.getBuild());
+    }
+
+    @Test
+    public void tokenIsNotJournaledInPlainText() throws IOException {
+        File directory = folder.newFolder("outbox");
+        OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024, 1);
+        journal.open();
+        journal.append("team", "plain-token", "#room", "message", "good", "folder/job", 42);
+        journal.close();
+
+        for (File segment : directory.listFiles()) {
+            assertFalse(FileUtils.readFileToString(segment, "ISO-8859-1").contains("plain-token"));
+        }
+        assertEquals("plain-token", new OutboxJournal(directory, 1024 * 1024, 1).open().get(0).getToken());
+    }
+}
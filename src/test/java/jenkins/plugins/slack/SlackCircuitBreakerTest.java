@@ -0,0 +1,73 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlackCircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        SlackCircuitBreaker breaker = new SlackCircuitBreaker("team", 3, 1000);
+        breaker.recordFailure(0);
+        breaker.recordFailure(0);
+        assertTrue(breaker.allowRequest(0));
+        breaker.recordFailure(0);
+        assertEquals(SlackCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(500));
+    }
+
+    @Test
+    public void successResetsTheFailureCount() {
+        SlackCircuitBreaker breaker = new SlackCircuitBreaker("team", 2, 1000);
+        breaker.recordFailure(0);
+        breaker.record(RoomResult.failure("#room", 404, "channel_not_found"));
+        breaker.recordFailure(0);
+        assertEquals(SlackCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void letsASingleProbeThroughOnceOpenTimeHasPassed() {
+        SlackCircuitBreaker breaker = new SlackCircuitBreaker("team", 1, 1000);
+        breaker.recordFailure(0);
+        assertTrue(breaker.allowRequest(1000));
+        assertEquals(SlackCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(1001));
+        breaker.recordSuccess();
+        assertEquals(SlackCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(1002));
+    }
+
+    @Test
+    public void failedProbeReopensTheCircuit() {
+        SlackCircuitBreaker breaker = new SlackCircuitBreaker("team", 1, 1000);
+        breaker.recordFailure(0);
+        assertTrue(breaker.allowRequest(1000));
+        breaker.recordFailure(1000);
+        assertEquals(SlackCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(1500));
+        assertTrue(breaker.allowRequest(2000));
+    }
+
+    @Test
+    public void releasedProbeLetsTheNextCallerProbe() {
+        SlackCircuitBreaker breaker = new SlackCircuitBreaker("team", 1, 1000);
+        breaker.recordFailure(0);
+        assertTrue(breaker.allowRequest(1000));
+        breaker.releaseProbe();
+        assertEquals(SlackCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest(1001));
+    }
+
+    @Test
+    public void backoffStaysWithinTheExponentialCap() {
+        for (int attempt = 1; attempt < 10; attempt++) {
+            long backoff = StandardSlackService.backoffMillis(attempt);
+            assertTrue(backoff >= 0);
+            assertTrue(backoff <= Math.min(StandardSlackService.MAX_BACKOFF_MILLIS,
+                    StandardSlackService.BASE_BACKOFF_MILLIS << (attempt - 1)));
+        }
+    }
+}
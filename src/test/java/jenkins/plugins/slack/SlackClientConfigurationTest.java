@@ -0,0 +1,36 @@
+package jenkins.plugins.slack;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SlackClientConfigurationTest {
+
+    @Test
+    public void snapshotIsReusedUntilInvalidated() {
+        SlackClientConfiguration.invalidate();
+        SlackClientConfiguration configuration = SlackClientConfiguration.get();
+        assertSame(configuration, SlackClientConfiguration.get());
+        SlackClientConfiguration.invalidate();
+        assertNotSame(configuration, SlackClientConfiguration.get());
+    }
+
+    @Test
+    public void defaultsApplyOutsideOfJenkins() {
+        SlackClientConfiguration configuration = SlackClientConfiguration.get();
+        assertEquals(TimeUnit.SECONDS.toMillis(SlackNotifier.DescriptorImpl.DEFAULT_CONNECT_TIMEOUT_SECONDS),
+                configuration.getConnectTimeoutMillis());
+        assertEquals(TimeUnit.SECONDS.toNanos(SlackNotifier.DescriptorImpl.DEFAULT_NOTIFICATION_TIMEOUT_SECONDS),
+                configuration.getNotificationTimeoutNanos());
+
+        HttpClient client = new HttpClient();
+        configuration.configure(client);
+        assertNull(client.getHostConfiguration().getProxyHost());
+    }
+}
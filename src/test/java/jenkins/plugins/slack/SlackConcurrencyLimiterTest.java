@@ -0,0 +1,61 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlackConcurrencyLimiterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    public void limitGrowsWhileSlackIsHealthy() {
+        SlackConcurrencyLimiter limiter = new SlackConcurrencyLimiter("team", 2, 10);
+        long now = 0;
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limiter.acquire(Long.MAX_VALUE));
+            limiter.release(RoomResult.success("#room", 200), RTT, now += RTT);
+        }
+        assertTrue(limiter.getLimit() > 2);
+        assertTrue(limiter.getLimit() <= 10);
+    }
+
+    @Test
+    public void limitBacksOffOnThrottlingOncePerRoundTrip() {
+        SlackConcurrencyLimiter limiter = new SlackConcurrencyLimiter("team", 8, 10);
+        assertTrue(limiter.acquire(Long.MAX_VALUE));
+        limiter.release(RoomResult.success("#room", 200), RTT, RTT);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.acquire(Long.MAX_VALUE));
+            limiter.release(RoomResult.throttled("#room", 1000, "rate limited"), RTT, 2 * RTT + i);
+        }
+        assertEquals(6, limiter.getLimit());
+
+        assertTrue(limiter.acquire(Long.MAX_VALUE));
+        limiter.release(RoomResult.failure("#room", 503, "unavailable"), RTT, 4 * RTT);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void slowPostsCountAsCongestion() {
+        SlackConcurrencyLimiter limiter = new SlackConcurrencyLimiter("team", 8, 10);
+        assertTrue(limiter.acquire(Long.MAX_VALUE));
+        limiter.release(RoomResult.success("#room", 200), RTT, RTT);
+        assertTrue(limiter.acquire(Long.MAX_VALUE));
+        limiter.release(RoomResult.success("#room", 200), 5 * RTT, 10 * RTT);
+        assertEquals(6, limiter.getLimit());
+    }
+
+    @Test
+    public void acquireGivesUpAtTheDeadline() {
+        SlackConcurrencyLimiter limiter = new SlackConcurrencyLimiter("team", 1, 1);
+        assertTrue(limiter.acquire(Long.MAX_VALUE));
+        assertFalse(limiter.acquire(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10)));
+        assertEquals(1, limiter.getInFlight());
+    }
+}
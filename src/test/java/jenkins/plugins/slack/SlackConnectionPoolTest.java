@@ -0,0 +1,73 @@
+package jenkins.plugins.slack;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlackConnectionPoolTest {
+
+    private HttpServer server;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                InputStream in = exchange.getRequestBody();
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    // drain the request so the connection can be kept alive
+                }
+                byte[] body = "ok".getBytes("UTF-8");
+                exchange.sendResponseHeaders(HttpStatus.SC_OK, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Every publish builds a new client; the underlying connection must still be reused.
+     */
+    @Test
+    public void consecutivePostsReuseTheSameConnection() throws IOException {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/services/hooks/jenkins-ci";
+        for (int i = 0; i < 5; i++) {
+            HttpClient client = SlackConnectionPool.newHttpClient();
+            PostMethod post = new PostMethod(url);
+            try {
+                post.addParameter("payload", "{\"text\":\"message " + i + "\"}");
+                assertEquals(HttpStatus.SC_OK, client.executeMethod(post));
+                assertEquals("ok", post.getResponseBodyAsString());
+            } finally {
+                post.releaseConnection();
+            }
+        }
+        assertEquals(1, clientPorts.size());
+    }
+}
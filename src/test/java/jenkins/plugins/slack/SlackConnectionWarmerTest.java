@@ -0,0 +1,33 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlackConnectionWarmerTest {
+
+    @Test
+    public void warmingSendsOneRequestWithoutPosting() {
+        StandardSlackServiceStub service = new StandardSlackServiceStub("warm-team", "token", "#room");
+        HttpClientStub httpClientStub = new HttpClientStub();
+        httpClientStub.setHttpStatus(200);
+        service.setHttpClient(httpClientStub);
+
+        assertTrue(SlackConnectionWarmer.warm(service));
+        assertEquals(1, httpClientStub.getNumberOfCallsToExecuteMethod());
+        assertEquals(0, SlackMetrics.forTeam("warm-team").getAttempts());
+    }
+
+    @Test
+    public void teamsThatPostedSinceTheLastRoundNeedNoKeepAlive() {
+        assertTrue(SlackConnectionWarmer.isIdle("busy-team"));
+        assertTrue(SlackConnectionWarmer.isIdle("busy-team"));
+
+        SlackMetrics.Meter meter = SlackMetrics.forRoom("busy-team", "#room");
+        meter.completed(meter.started(), 200);
+        assertFalse(SlackConnectionWarmer.isIdle("busy-team"));
+        assertTrue(SlackConnectionWarmer.isIdle("busy-team"));
+    }
+}
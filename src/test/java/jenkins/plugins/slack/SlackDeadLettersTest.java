@@ -0,0 +1,38 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlackDeadLettersTest {
+
+    @Test
+    public void oldestLettersAreDroppedOnceFull() {
+        SlackDeadLetters deadLetters = new SlackDeadLetters(2, null);
+        deadLetters.add("team", "token", "#room", "first", "good", "HTTP 500", "job", 1);
+        deadLetters.add("team", "token", "#room", "second", "good", "HTTP 500", "job", 2);
+        deadLetters.add("team", "token", "#room", "third", "good", "HTTP 500", "job", 3);
+
+        List<DeadLetter> letters = deadLetters.getLetters();
+        assertEquals(2, letters.size());
+        assertEquals("second", letters.get(0).getMessage());
+        assertEquals("third", letters.get(1).getMessage());
+        assertEquals(3, letters.get(1).getBuild());
+    }
+
+    @Test
+    public void discardOnlyRemovesTheGivenChannel() {
+        SlackDeadLetters deadLetters = new SlackDeadLetters(10, null);
+        deadLetters.add("team", "token", "#room1", "first", "good", "HTTP 500", null, 0);
+        deadLetters.add("team", "token", "#room2", "second", "good", "HTTP 500", null, 0);
+        deadLetters.add("team", "token", "#room1", "third", "good", "HTTP 500", null, 0);
+
+        assertEquals(2, deadLetters.discard("#room1"));
+        assertEquals(1, deadLetters.size());
+        assertEquals("#room2", deadLetters.getLetters().get(0).getRoomId());
+        assertEquals(1, deadLetters.discard(null));
+        assertEquals(0, deadLetters.size());
+    }
+}
@@ -0,0 +1,66 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlackDeduplicatorTest {
+
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(30);
+
+    @Test
+    public void duplicatesAreOnlySuppressedWithinTheWindow() {
+        SlackDeduplicator deduplicator = new SlackDeduplicator(100);
+        long fingerprint = SlackDeduplicator.fingerprint("team", "token", "#room", "message", "good");
+
+        assertTrue(deduplicator.firstSeen(fingerprint, 0, WINDOW));
+        assertFalse(deduplicator.firstSeen(fingerprint, WINDOW - 1, WINDOW));
+        assertTrue(deduplicator.firstSeen(fingerprint, WINDOW, WINDOW));
+    }
+
+    @Test
+    public void forgottenMessagesCanBeSentAgain() {
+        SlackDeduplicator deduplicator = new SlackDeduplicator(100);
+        long fingerprint = SlackDeduplicator.fingerprint("team", "token", "#room", "message", "good");
+
+        assertTrue(deduplicator.firstSeen(fingerprint, 0, WINDOW));
+        deduplicator.forget(fingerprint);
+        assertTrue(deduplicator.firstSeen(fingerprint, 1, WINDOW));
+    }
+
+    @Test
+    public void fingerprintCoversTokenChannelColorAndText() {
+        long fingerprint = SlackDeduplicator.fingerprint("team", "token", "#room", "message", "good");
+        assertEquals(fingerprint, SlackDeduplicator.fingerprint("team", "token", "#room", "message", "good"));
+        assertTrue(fingerprint != SlackDeduplicator.fingerprint("team", "other", "#room", "message", "good"));
+        assertTrue(fingerprint != SlackDeduplicator.fingerprint("team", "token", "#other", "message", "good"));
+        assertTrue(fingerprint != SlackDeduplicator.fingerprint("team", "token", "#room", "message", "danger"));
+        assertTrue(fingerprint != SlackDeduplicator.fingerprint("team", "token", "#room", "message!", "good"));
+        assertTrue(SlackDeduplicator.fingerprint("ab", "token", "c", "message", "good")
+                != SlackDeduplicator.fingerprint("a", "token", "bc", "message", "good"));
+    }
+
+    @Test
+    public void scopeSeparatesOtherwiseIdenticalMessages() {
+        long unscoped = SlackDeduplicator.fingerprint("team", "token", "#room", "message", "good");
+        long build1 = SlackDeduplicator.fingerprint("job#1", "team", "token", "#room", "message", "good");
+        assertEquals(unscoped, SlackDeduplicator.fingerprint(null, "team", "token", "#room", "message", "good"));
+        assertEquals(build1, SlackDeduplicator.fingerprint("job#1", "team", "token", "#room", "message", "good"));
+        assertTrue(build1 != unscoped);
+        assertTrue(build1 != SlackDeduplicator.fingerprint("job#2", "team", "token", "#room", "message", "good"));
+    }
+
+    @Test
+    public void setStaysBounded() {
+        SlackDeduplicator deduplicator = new SlackDeduplicator(100);
+        for (int i = 0; i < 1000; i++) {
+            deduplicator.firstSeen(SlackDeduplicator.fingerprint("team", "token", "#room", "message " + i, "good"),
+                    i, WINDOW);
+        }
+        assertTrue(deduplicator.size() <= 100);
+    }
+}
@@ -0,0 +1,99 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SlackDispatcherTest {
+
+    /** Runs nothing until asked to, on the calling thread. */
+    private static final class ManualExecutor implements Executor {
+        final List<Runnable> queued = new ArrayList<Runnable>();
+
+        public void execute(Runnable command) {
+            queued.add(command);
+        }
+
+        void runAll() {
+            while (!queued.isEmpty()) {
+                queued.remove(0).run();
+            }
+        }
+    }
+
+    private final List<String> posted = new ArrayList<String>();
+
+    private Callable<Void> post(final String name) {
+        return new Callable<Void>() {
+            public Void call() {
+                posted.add(name);
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void failuresOvertakeSuccesses() {
+        ManualExecutor executor = new ManualExecutor();
+        SlackDispatcher dispatcher = new SlackDispatcher("team", executor, 100, 60000L);
+        dispatcher.submit(SlackPriority.LOW, "#room/job#1", post("success 1"));
+        dispatcher.submit(SlackPriority.LOW, "#room/job#2", post("success 2"));
+        dispatcher.submit(SlackPriority.URGENT, "#room/job#3", post("failure 3"));
+        assertArrayEquals(new int[]{1, 0, 2}, dispatcher.getQueueLengths());
+
+        executor.runAll();
+        assertEquals(Arrays.asList("failure 3", "success 1", "success 2"), posted);
+    }
+
+    @Test
+    public void postsAboutOneBuildStayInOrder() {
+        ManualExecutor executor = new ManualExecutor();
+        SlackDispatcher dispatcher = new SlackDispatcher("team", executor, 100, 60000L);
+        dispatcher.submit(SlackPriority.LOW, "#room/job#1", post("other build"));
+        dispatcher.submit(SlackPriority.LOW, "#room/job#2", post("started 2"));
+        dispatcher.submit(SlackPriority.URGENT, "#room/job#2", post("failure 2"));
+
+        executor.runAll();
+        assertEquals(Arrays.asList("started 2", "failure 2", "other build"), posted);
+    }
+
+    @Test
+    public void lowerLanesDrainOnceTheyHaveWaitedTooLong() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        SlackDispatcher dispatcher = new SlackDispatcher("team", executor, 100, 0L);
+        dispatcher.submit(SlackPriority.LOW, "#room/job#1", post("success 1"));
+        Thread.sleep(1);
+        dispatcher.submit(SlackPriority.URGENT, "#room/job#2", post("failure 2"));
+
+        executor.runAll();
+        assertEquals(Arrays.asList("success 1", "failure 2"), posted);
+    }
+
+    @Test
+    public void saturatedTeamRefusesFurtherPosts() {
+        ManualExecutor executor = new ManualExecutor();
+        SlackDispatcher dispatcher = new SlackDispatcher("team", executor, 2, 60000L);
+        dispatcher.submit(SlackPriority.LOW, "#room/job#1", post("success 1"));
+        dispatcher.submit(SlackPriority.LOW, "#room/job#1", post("success 1 again"));
+        try {
+            dispatcher.submit(SlackPriority.URGENT, "#room/job#2", post("failure 2"));
+            fail("expected the post to be refused");
+        } catch (RejectedExecutionException expected) {
+        }
+        assertEquals(2, dispatcher.getQueued());
+        assertEquals(1, dispatcher.getRejected());
+
+        executor.runAll();
+        assertEquals(0, dispatcher.getQueued());
+        assertEquals(Arrays.asList("success 1", "success 1 again"), posted);
+    }
+}
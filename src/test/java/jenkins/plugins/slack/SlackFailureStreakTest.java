@@ -0,0 +1,77 @@
+package jenkins.plugins.slack;
+
+import hudson.model.Result;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlackFailureStreakTest {
+
+    @Test
+    public void failuresExtendTheStreakFromTheLastSuccess() {
+        SlackFailureStreak streak = new SlackFailureStreak(null);
+        streak.update(1, Result.SUCCESS, 0, 100);
+        streak.update(2, Result.FAILURE, 200, 300);
+        streak.update(3, Result.ABORTED, 400, 500);
+        streak.update(4, Result.UNSTABLE, 600, 700);
+
+        assertTrue(streak.isFailing());
+        assertEquals(2, streak.getFirstFailingBuild());
+        assertEquals(2, streak.getCount());
+        assertEquals(100, streak.getFailingSince());
+    }
+
+    @Test
+    public void successEndsTheStreakAndRecordsTheDowntime() {
+        SlackFailureStreak streak = new SlackFailureStreak(null);
+        streak.update(1, Result.SUCCESS, 0, 100);
+        streak.update(2, Result.FAILURE, 200, 300);
+        streak.update(3, Result.SUCCESS, 400, 1000);
+
+        assertFalse(streak.isFailing());
+        assertEquals(0, streak.getCount());
+        assertEquals(900, streak.downtimeEndedBy(3));
+
+        streak.update(4, Result.SUCCESS, 1100, 1200);
+        assertEquals(-1, streak.downtimeEndedBy(4));
+    }
+
+    @Test
+    public void olderBuildsAreIgnored() {
+        SlackFailureStreak streak = new SlackFailureStreak(null);
+        streak.update(2, Result.FAILURE, 200, 300);
+        assertFalse(streak.update(1, Result.SUCCESS, 0, 100));
+        assertEquals(1, streak.getCount());
+        assertEquals(200, streak.getFailingSince());
+    }
+
+    @Test
+    public void savedLineRoundTrips() {
+        SlackFailureStreak streak = new SlackFailureStreak(null);
+        streak.update(1, Result.SUCCESS, 0, 100);
+        streak.update(2, Result.FAILURE, 200, 300);
+
+        SlackFailureStreak loaded = new SlackFailureStreak(null);
+        assertTrue(loaded.parse(streak.format()));
+        assertEquals(streak.format(), loaded.format());
+        assertFalse(loaded.parse("not a streak"));
+    }
+
+    @Test
+    public void snapshotIsNotAffectedByLaterBuilds() {
+        SlackFailureStreak streak = new SlackFailureStreak(null);
+        streak.update(1, Result.SUCCESS, 0, 100);
+        streak.update(2, Result.FAILURE, 200, 300);
+        streak.update(3, Result.SUCCESS, 400, 1000);
+        SlackFailureStreak snapshot = streak.snapshot();
+
+        streak.update(4, Result.FAILURE, 1100, 1200);
+        streak.update(5, Result.FAILURE, 1300, 1400);
+
+        assertEquals(900, snapshot.downtimeEndedBy(3));
+        assertFalse(snapshot.isFailing());
+        assertEquals(2, streak.getCount());
+    }
+}
@@ -0,0 +1,100 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SlackMessageSplitterTest {
+
+    @Test
+    public void smallMessageIsNotSplit() {
+        List<String> parts = SlackMessageSplitter.split("Changes:\n- one\n- two", 100, 10);
+        assertEquals(1, parts.size());
+        assertEquals("Changes:\n- one\n- two", parts.get(0));
+    }
+
+    @Test
+    public void largeMessageIsSplitAtLineBoundariesInOrder() {
+        StringBuilder message = new StringBuilder("Changes:");
+        for (int i = 0; i < 100; i++) {
+            message.append("\n- commit ").append(i);
+        }
+        List<String> parts = SlackMessageSplitter.split(message.toString(), 200, 100);
+        assertTrue(parts.size() > 1);
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < parts.size(); i++) {
+            String part = parts.get(i);
+            assertTrue(SlackMessageSplitter.postedSize(part, 0, part.length(), Integer.MAX_VALUE) <= 200);
+            if (i > 0) {
+                String header = "(continued " + (i + 1) + "/" + parts.size() + ")\n";
+                assertTrue(part.startsWith(header));
+                part = part.substring(header.length());
+                joined.append('\n');
+            }
+            assertTrue(part.startsWith("- commit ") || part.startsWith("Changes:"));
+            joined.append(part);
+        }
+        assertEquals(message.toString(), joined.toString());
+    }
+
+    @Test
+    public void numberOfPartsIsCapped() {
+        StringBuilder message = new StringBuilder("Changes:");
+        for (int i = 0; i < 10000; i++) {
+            message.append("\n- commit ").append(i);
+        }
+        List<String> parts = SlackMessageSplitter.split(message.toString(), 200, 3);
+        assertEquals(3, parts.size());
+        assertTrue(parts.get(2).endsWith("more line(s) not shown"));
+        for (String part : parts) {
+            assertTrue(SlackMessageSplitter.postedSize(part, 0, part.length(), Integer.MAX_VALUE) <= 200);
+        }
+    }
+
+    @Test
+    public void overlongLineIsCut() {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            message.append('\u00e9');
+        }
+        List<String> parts = SlackMessageSplitter.split(message.toString(), 100, 100);
+        assertTrue(parts.size() > 1);
+        for (String part : parts) {
+            assertTrue(SlackMessageSplitter.postedSize(part, 0, part.length(), Integer.MAX_VALUE) <= 100);
+        }
+    }
+
+    @Test
+    public void partsFitTheFormEncodedPost() throws IOException {
+        StringBuilder message = new StringBuilder("Changes:");
+        for (int i = 0; i < 300; i++) {
+            message.append("\n- \"fix\" caf\u00e9 & stuff \u20ac #").append(i);
+        }
+        long empty = SlackPayloadEncoder.form("#room",
+                Collections.singletonList(new SlackAttachment("", "good"))).getContentLength();
+        List<String> parts = SlackMessageSplitter.split(message.toString(), 1000, 100);
+        assertTrue(parts.size() > 1);
+        for (String part : parts) {
+            long posted = SlackPayloadEncoder.form("#room",
+                    Collections.singletonList(new SlackAttachment(part, "good"))).getContentLength();
+            assertEquals(posted - empty, SlackMessageSplitter.postedSize(part, 0, part.length(), Integer.MAX_VALUE));
+            assertTrue(posted - empty <= 1000);
+        }
+    }
+
+    @Test
+    public void postedSizeCountsBothFormEncodedCopies() {
+        // JSON escapes and UTF-8, each byte form-URL-encoded, in the fallback and the field value
+        assertEquals(2, SlackMessageSplitter.postedSize("a", 0, 1, Integer.MAX_VALUE));
+        assertEquals(12, SlackMessageSplitter.postedSize("\"", 0, 1, Integer.MAX_VALUE));
+        assertEquals(8, SlackMessageSplitter.postedSize("\n", 0, 1, Integer.MAX_VALUE));
+        assertEquals(16, SlackMessageSplitter.postedSize("\u0001", 0, 1, Integer.MAX_VALUE));
+        assertEquals(18, SlackMessageSplitter.postedSize("\u20ac", 0, 1, Integer.MAX_VALUE));
+        assertEquals(24, SlackMessageSplitter.postedSize("\ud83d\ude00", 0, 2, Integer.MAX_VALUE));
+    }
+}
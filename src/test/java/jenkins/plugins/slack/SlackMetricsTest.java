@@ -0,0 +1,68 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SlackMetricsTest {
+
+    @Test
+    public void channelOutcomesCountTowardsTheirTeam() {
+        SlackMetrics.Meter room1 = SlackMetrics.forRoom("metrics-team", "#room1");
+        SlackMetrics.Meter room2 = SlackMetrics.forRoom("metrics-team", "#room2");
+        room1.completed(room1.started(), 200);
+        room2.completed(room2.started(), 500);
+        room2.completed(room2.started(), RoomResult.NO_STATUS);
+        room2.timedOut();
+
+        SlackMetrics.Meter team = SlackMetrics.forTeam("metrics-team");
+        assertEquals(3, team.getAttempts());
+        assertEquals(1, team.getSuccesses());
+        assertEquals(2, team.getFailures());
+        assertEquals(Long.valueOf(1), team.getFailuresByStatus().get("500"));
+        assertEquals(Long.valueOf(1), team.getFailuresByStatus().get("none"));
+        assertEquals(1, team.getTimeouts());
+        assertEquals(0, team.getInFlight());
+        assertEquals(1, room1.getAttempts());
+    }
+
+    @Test
+    public void leastRecentlyUsedChannelsAreEvicted() {
+        SlackMetrics.Meter used = SlackMetrics.forRoom("evict-team", "#used");
+        SlackMetrics.Meter idle = SlackMetrics.forRoom("evict-team", "#idle");
+        idle.completed(idle.started(), 200);
+        used.completed(used.started(), 200);
+
+        SlackMetrics.evictIdleChannels(1);
+        assertEquals(1, SlackMetrics.getChannels().size());
+        assertTrue(SlackMetrics.getChannels().containsKey("evict-team/#used"));
+        assertEquals(0, SlackMetrics.forRoom("evict-team", "#idle").getAttempts());
+        assertEquals(2, SlackMetrics.forTeam("evict-team").getAttempts());
+    }
+
+    @Test
+    public void histogramQuantilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        assertEquals(100, histogram.getCount());
+        long p50 = histogram.getQuantileMicros(0.5);
+        assertTrue(p50 >= 50000 && p50 <= 50000 * 1.125);
+        long p99 = histogram.getQuantileMicros(0.99);
+        assertTrue(p99 >= 99000 && p99 <= 100000);
+        assertEquals(100000, histogram.getMaxMicros());
+    }
+
+    @Test
+    public void everyValueFallsInsideItsBucket() {
+        for (long micros = 0; micros < 100000; micros += 7) {
+            int index = LatencyHistogram.index(micros);
+            assertTrue(LatencyHistogram.upperBound(index) >= micros);
+            assertTrue(index == 0 || LatencyHistogram.upperBound(index - 1) < micros);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package jenkins.plugins.slack;
+
+import org.apache.commons.httpclient.NameValuePair;
+import org.apache.commons.httpclient.util.EncodingUtil;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares bytes allocated per encoded post between the former org.json tree plus form encoding and
+ * {@link SlackPayloadEncoder}. Not a unit test; run it with {@code main} on a HotSpot JVM.
+ */
+public class SlackPayloadEncoderBenchmark {
+
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 100000;
+
+    public static void main(String[] args) throws Exception {
+        StringBuilder message = new StringBuilder("my-job - #42 Failure after 3 min 12 sec (<http://jenkins/job/my-job/42/|Open>)");
+        message.append("\nChanges:");
+        for (int i = 0; i < 20; i++) {
+            message.append("\n- Fix \"flaky\" test #").append(i).append(" [Jane Doe]");
+        }
+        final List<SlackAttachment> attachments =
+                Collections.singletonList(new SlackAttachment(message.toString(), "danger"));
+
+        report("org.json + form encoding", new Encoder() {
+            public long encode() {
+                return jsonTree("#builds", attachments);
+            }
+        });
+        report("SlackPayloadEncoder.form", new Encoder() {
+            public long encode() throws IOException {
+                return SlackPayloadEncoder.form("#builds", attachments).getContentLength();
+            }
+        });
+        report("SlackPayloadEncoder.json", new Encoder() {
+            public long encode() throws IOException {
+                return SlackPayloadEncoder.json("#builds", attachments).getContentLength();
+            }
+        });
+    }
+
+    private static long jsonTree(String roomId, List<SlackAttachment> attachments) {
+        JSONArray array = new JSONArray();
+        for (SlackAttachment slackAttachment : attachments) {
+            JSONObject field = new JSONObject();
+            field.put("short", false);
+            field.put("value", slackAttachment.getMessage());
+            JSONArray fields = new JSONArray();
+            fields.put(field);
+            JSONObject attachment = new JSONObject();
+            attachment.put("fallback", slackAttachment.getMessage());
+            attachment.put("color", slackAttachment.getColor());
+            attachment.put("fields", fields);
+            JSONArray mrkdwn = new JSONArray();
+            mrkdwn.put("pretext");
+            mrkdwn.put("text");
+            mrkdwn.put("fields");
+            attachment.put("mrkdwn_in", mrkdwn);
+            array.put(attachment);
+        }
+        JSONObject json = new JSONObject();
+        json.put("channel", roomId);
+        json.put("attachments", array);
+        String body = EncodingUtil.formUrlEncode(new NameValuePair[]{new NameValuePair("payload", json.toString())}, "UTF-8");
+        return EncodingUtil.getBytes(body, "UTF-8").length;
+    }
+
+    private static void report(String name, Encoder encoder) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += encoder.encode();
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += encoder.encode();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        System.out.printf("%-28s %8d bytes/op %8d ns/op (%d)%n", name, allocated / ITERATIONS, elapsed / ITERATIONS, sink);
+    }
+
+    private interface Encoder {
+        long encode() throws IOException;
+    }
+}
@@ -0,0 +1,58 @@
+package jenkins.plugins.slack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlackPayloadEncoderTest {
+
+    @Test
+    public void jsonBodyMatchesTheAttachmentLayout() throws IOException {
+        RequestEntity entity = SlackPayloadEncoder.json("#room", Arrays.asList(
+                new SlackAttachment("Build <b>1</b> \"failed\" ☃", "danger"),
+                new SlackAttachment("Build 2 passed", "good")));
+        assertEquals(SlackPayloadEncoder.JSON_CONTENT_TYPE, entity.getContentType());
+
+        JsonNode payload = new ObjectMapper().readTree(body(entity));
+        assertEquals("#room", payload.get("channel").asText());
+        JsonNode attachments = payload.get("attachments");
+        assertEquals(2, attachments.size());
+        assertEquals("Build <b>1</b> \"failed\" ☃", attachments.get(0).get("fallback").asText());
+        assertEquals("danger", attachments.get(0).get("color").asText());
+        assertFalse(attachments.get(0).get("fields").get(0).get("short").asBoolean());
+        assertEquals("Build <b>1</b> \"failed\" ☃", attachments.get(0).get("fields").get(0).get("value").asText());
+        assertEquals(3, attachments.get(0).get("mrkdwn_in").size());
+        assertEquals("good", attachments.get(1).get("color").asText());
+    }
+
+    @Test
+    public void formBodyCarriesTheJsonAsPayloadParameter() throws IOException {
+        RequestEntity entity = SlackPayloadEncoder.form("#room",
+                Collections.singletonList(new SlackAttachment("a + b & c = 100%", "warning")));
+        assertEquals(SlackPayloadEncoder.FORM_CONTENT_TYPE, entity.getContentType());
+        assertTrue(entity.isRepeatable());
+
+        String form = body(entity);
+        assertEquals(form.length(), entity.getContentLength());
+        assertTrue(form.startsWith("payload="));
+        JsonNode payload = new ObjectMapper().readTree(URLDecoder.decode(form.substring("payload=".length()), "UTF-8"));
+        assertEquals("a + b & c = 100%", payload.get("attachments").get(0).get("fallback").asText());
+    }
+
+    private static String body(RequestEntity entity) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeRequest(out);
+        return out.toString("UTF-8");
+    }
+}
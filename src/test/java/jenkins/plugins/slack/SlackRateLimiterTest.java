@@ -0,0 +1,60 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlackRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void burstIsAllowedThenMessagesAreSpacedOut() {
+        SlackRateLimiter limiter = new SlackRateLimiter(1, 3);
+        long now = 42 * SECOND;
+        assertEquals(0, limiter.reserve("team/#room", now));
+        assertEquals(0, limiter.reserve("team/#room", now));
+        assertEquals(0, limiter.reserve("team/#room", now));
+        assertEquals(SECOND, limiter.reserve("team/#room", now));
+        assertEquals(2 * SECOND, limiter.reserve("team/#room", now));
+    }
+
+    @Test
+    public void roomsAreLimitedIndependently() {
+        SlackRateLimiter limiter = new SlackRateLimiter(1, 1);
+        long now = 42 * SECOND;
+        assertEquals(0, limiter.reserve("team/#room1", now));
+        assertEquals(0, limiter.reserve("team/#room2", now));
+        assertEquals(0, limiter.reserve("other/#room1", now));
+        assertEquals(SECOND, limiter.reserve("team/#room1", now));
+    }
+
+    @Test
+    public void retryAfterDelaysTheNextMessage() {
+        SlackRateLimiter limiter = new SlackRateLimiter(1, 3);
+        long now = 42 * SECOND;
+        limiter.penalize("team/#room", now, 30 * SECOND);
+        assertEquals(30 * SECOND, limiter.reserve("team/#room", now));
+        assertEquals(0, limiter.reserve("team/#room", now + 31 * SECOND));
+    }
+
+    @Test
+    public void idleBucketsAreEvicted() {
+        SlackRateLimiter limiter = new SlackRateLimiter(1, 1);
+        limiter.reserve("team/#room", 0);
+        assertEquals(1, limiter.size());
+        limiter.evictIdle(TimeUnit.MINUTES.toNanos(11));
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    public void refusedReservationDoesNotUseUpASlot() {
+        SlackRateLimiter limiter = new SlackRateLimiter(1, 1);
+        long now = 42 * SECOND;
+        assertEquals(0, limiter.reserve("team/#room", now));
+        assertEquals(-1, limiter.reserve("team/#room", now, SECOND / 2));
+        assertEquals(SECOND, limiter.reserve("team/#room", now, SECOND));
+    }
+}
@@ -0,0 +1,60 @@
+package jenkins.plugins.slack;
+
+import hudson.model.Result;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SlackResultHistoryTest {
+
+    @Test
+    public void abortedBuildsAreSkipped() {
+        SlackResultHistory history = new SlackResultHistory(8);
+        history.record(1, Result.FAILURE, 100);
+        history.record(2, Result.ABORTED, 200);
+        history.record(3, Result.SUCCESS, 300);
+
+        assertEquals(Result.FAILURE, history.previousNonAbortedResult(3));
+        assertEquals(Result.SUCCESS, history.previousNonAbortedResult(4));
+        assertNull(history.previousNonAbortedResult(1));
+    }
+
+    @Test
+    public void lastSuccessIsTheLatestBeforeTheBuild() {
+        SlackResultHistory history = new SlackResultHistory(8);
+        history.record(1, Result.SUCCESS, 100);
+        history.record(2, Result.FAILURE, 200);
+        history.record(3, Result.SUCCESS, 300);
+
+        assertEquals(-1, history.lastSuccessEndTime(1));
+        assertEquals(100, history.lastSuccessEndTime(3));
+        assertEquals(300, history.lastSuccessEndTime(4));
+    }
+
+    @Test
+    public void buildsCompletingOutOfOrderAreSorted() {
+        SlackResultHistory history = new SlackResultHistory(8);
+        history.record(1, Result.SUCCESS, 100);
+        history.record(3, Result.FAILURE, 300);
+        history.record(2, Result.UNSTABLE, 250);
+
+        assertEquals(Result.UNSTABLE, history.previousNonAbortedResult(3));
+        assertEquals(Result.FAILURE, history.previousNonAbortedResult(4));
+        assertEquals(3, history.size());
+    }
+
+    @Test
+    public void droppedEntriesStillCount() {
+        SlackResultHistory history = new SlackResultHistory(2);
+        history.seed(Result.UNSTABLE, 50);
+        history.record(1, Result.SUCCESS, 100);
+        history.record(2, Result.ABORTED, 200);
+        history.record(3, Result.ABORTED, 300);
+        history.record(4, Result.ABORTED, 400);
+
+        assertEquals(2, history.size());
+        assertEquals(Result.SUCCESS, history.previousNonAbortedResult(5));
+        assertEquals(100, history.lastSuccessEndTime(5));
+    }
+}
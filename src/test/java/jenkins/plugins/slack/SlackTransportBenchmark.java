@@ -0,0 +1,120 @@
+package jenkins.plugins.slack;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares throughput and connections opened by the {@link SlackTransport} backends when many notifications
+ * are posted concurrently to a local stand-in for Slack, which answers after a simulated latency. Not a unit
+ * test; run it with {@code main}. The JDK's built-in server only speaks HTTP/1.1, so this measures connection
+ * reuse, not multiplexing.
+ */
+public class SlackTransportBenchmark {
+
+    private static final int THREADS = 16;
+    private static final int POSTS = 4000;
+    private static final long LATENCY_MILLIS = 5;
+
+    public static void main(String[] args) throws Exception {
+        final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(THREADS));
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                InputStream in = exchange.getRequestBody();
+                byte[] buffer = new byte[4096];
+                while (in.read(buffer) != -1) {
+                    // drain the request so the connection can be kept alive
+                }
+                try {
+                    Thread.sleep(LATENCY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = "ok".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/services/hooks/jenkins-ci?token=x";
+        try {
+            for (int round = 0; round < 2; round++) {
+                run("commons-httpclient", url, clientPorts, new TransportFactory() {
+                    public SlackTransport create() {
+                        return new HttpClientTransport(SlackConnectionPool.newHttpClient(), 10000);
+                    }
+                });
+                run("HttpURLConnection", url, clientPorts, new TransportFactory() {
+                    public SlackTransport create() {
+                        return UrlConnectionTransport.INSTANCE;
+                    }
+                });
+            }
+        } finally {
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).shutdown();
+            SlackConnectionPool.shutdown();
+        }
+    }
+
+    private static void run(String name, final String url, Set<Integer> clientPorts, final TransportFactory factory)
+            throws InterruptedException {
+        final List<SlackAttachment> attachments =
+                Collections.singletonList(new SlackAttachment("my-job - #42 Success after 3 min 12 sec", "good"));
+        final AtomicInteger remaining = new AtomicInteger(POSTS);
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        ExecutorService clients = Executors.newFixedThreadPool(THREADS);
+        clientPorts.clear();
+        long start = System.nanoTime();
+        for (int i = 0; i < THREADS; i++) {
+            clients.execute(new Runnable() {
+                public void run() {
+                    try {
+                        while (remaining.getAndDecrement() > 0) {
+                            try {
+                                SlackTransport.Response response = factory.create().post(url,
+                                        SlackPayloadEncoder.form("#builds", attachments), 10000);
+                                if (response.getStatusCode() != 200) {
+                                    failures.incrementAndGet();
+                                }
+                            } catch (IOException e) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        clients.shutdown();
+        System.out.printf("%-20s %6d posts/s, %3d connection(s) opened, %d failure(s)%n",
+                name, POSTS * 1000L / Math.max(1, elapsedMillis), clientPorts.size(), failures.get());
+    }
+
+    private interface TransportFactory {
+        SlackTransport create();
+    }
+}
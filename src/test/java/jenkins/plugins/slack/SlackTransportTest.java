@@ -0,0 +1,86 @@
+package jenkins.plugins.slack;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.httpclient.HttpStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlackTransportTest {
+
+    private HttpServer server;
+    private String url;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                InputStream in = exchange.getRequestBody();
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    // drain the request so the connection can be kept alive
+                }
+                boolean throttled = exchange.getRequestURI().getPath().endsWith("/throttled");
+                byte[] body = (throttled ? "rate_limited" : "ok").getBytes("UTF-8");
+                if (throttled) {
+                    exchange.getResponseHeaders().add("Retry-After", "7");
+                }
+                exchange.sendResponseHeaders(throttled ? RoomResult.SC_TOO_MANY_REQUESTS : HttpStatus.SC_OK,
+                        body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/services/hooks/jenkins-ci";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void urlConnectionTransportReusesItsConnection() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            SlackTransport.Response response = UrlConnectionTransport.INSTANCE.post(url,
+                    SlackPayloadEncoder.form("#room", Collections.singletonList(new SlackAttachment("m" + i, "good"))),
+                    5000);
+            assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+            assertEquals("ok", response.getBody());
+        }
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void bothTransportsReportErrorStatusesAndRetryAfter() throws IOException {
+        SlackTransport[] transports = {
+                UrlConnectionTransport.INSTANCE,
+                new HttpClientTransport(SlackConnectionPool.newHttpClient(), 5000)
+        };
+        for (SlackTransport transport : transports) {
+            SlackTransport.Response response = transport.post(url + "/throttled",
+                    SlackPayloadEncoder.form("#room", Collections.singletonList(new SlackAttachment("m", "good"))),
+                    5000);
+            assertEquals(RoomResult.SC_TOO_MANY_REQUESTS, response.getStatusCode());
+            assertEquals("rate_limited", response.getBody());
+            assertEquals("7", response.getRetryAfter());
+        }
+    }
+}
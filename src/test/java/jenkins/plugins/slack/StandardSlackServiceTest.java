@@ -1,8 +1,14 @@
 package jenkins.plugins.slack;
 
+import org.apache.commons.httpclient.HttpMethod;
 import org.apache.http.HttpStatus;
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -92,6 +98,30 @@ public class StandardSlackServiceTest {
         assertFalse(service.publish("message"));
     }
 
+    /**
+     * Each post blocks until all three are in flight, so this only succeeds if rooms are posted concurrently
+     */
+    @Test
+    public void publishToMultipleRoomsPostsConcurrently() {
+        StandardSlackServiceStub service = new StandardSlackServiceStub("domain", "token", "#room1,#room2,#room3");
+        final CyclicBarrier allRoomsInFlight = new CyclicBarrier(3);
+        HttpClientStub httpClientStub = new HttpClientStub() {
+            @Override
+            public int executeMethod(HttpMethod httpMethod) {
+                try {
+                    allRoomsInFlight.await(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    return HttpStatus.SC_NOT_FOUND;
+                }
+                return super.executeMethod(httpMethod);
+            }
+        };
+        httpClientStub.setHttpStatus(HttpStatus.SC_OK);
+        service.setHttpClient(httpClientStub);
+        assertTrue(service.publish("message"));
+        assertEquals(3, service.getHttpClient().getNumberOfCallsToExecuteMethod());
+    }
+
     @Test
     public void publishToEmptyRoomReturnsTrue() {
         StandardSlackServiceStub service = new StandardSlackServiceStub("domain", "token", "");
@@ -100,4 +130,95 @@ public class StandardSlackServiceTest {
         service.setHttpClient(httpClientStub);
         assertTrue(service.publish("message"));
     }
+
+    @Test
+    public void roomsAreGivenUpOnceTheDeadlineHasPassed() {
+        StandardSlackServiceStub service = new StandardSlackServiceStub("domain", "token", "#room1,#room2");
+        HttpClientStub httpClientStub = new HttpClientStub();
+        httpClientStub.setHttpStatus(HttpStatus.SC_OK);
+        service.setHttpClient(httpClientStub);
+        PublishResult result = service.publishToRooms("message", "good", System.nanoTime() - 1);
+        assertFalse(result.isSuccess());
+        assertEquals(2, result.getFailures().size());
+        assertTrue(result.getFailures().get(0).isTimedOut());
+        assertEquals(0, httpClientStub.getNumberOfCallsToExecuteMethod());
+    }
+
+    @Test
+    public void queuedHelpersAreNotWaitedForOnceEveryRoomIsPosted() throws Exception {
+        String team = "busy-domain";
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < SlackExecutors.TEAM_THREADS; i++) {
+            SlackExecutors.forTeam(team).submit(new Runnable() {
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        try {
+            StandardSlackServiceStub service = new StandardSlackServiceStub(team, "token", "#room1,#room2,#room3");
+            HttpClientStub httpClientStub = new HttpClientStub();
+            httpClientStub.setHttpStatus(HttpStatus.SC_OK);
+            service.setHttpClient(httpClientStub);
+            long started = System.nanoTime();
+            PublishResult result = service.publishToRooms("message", "good",
+                    started + TimeUnit.SECONDS.toNanos(30));
+            assertTrue(result.isSuccess());
+            assertEquals(3, httpClientStub.getNumberOfCallsToExecuteMethod());
+            assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(10));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void probeIsGivenBackWhenTheRateLimitRunsOutTheDeadline() {
+        String team = "half-open-domain";
+        SlackCircuitBreaker breaker = SlackCircuitBreaker.forTeam(team);
+        long openedLongAgo = System.currentTimeMillis() - SlackCircuitBreaker.OPEN_MILLIS;
+        for (int i = 0; i < SlackCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            breaker.recordFailure(openedLongAgo);
+        }
+        // use up the room's burst, so the next post would have to wait past its deadline
+        for (int i = 0; i < SlackRateLimiter.BURST; i++) {
+            SlackRateLimiter.get().acquire(team, "#room1", Long.MAX_VALUE);
+        }
+        StandardSlackServiceStub service = new StandardSlackServiceStub(team, "token", "#room1");
+        HttpClientStub httpClientStub = new HttpClientStub();
+        httpClientStub.setHttpStatus(HttpStatus.SC_OK);
+        service.setHttpClient(httpClientStub);
+
+        RoomResult result = service.publishToRoom("#room1", Collections.singletonList(
+                new SlackAttachment("message", "good")), System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(result.isTimedOut());
+        assertEquals(0, httpClientStub.getNumberOfCallsToExecuteMethod());
+        assertEquals(SlackCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void onlyRetryableFailuresOfBuildNotificationsAreDeadLettered() {
+        SlackAttachment attachment = new SlackAttachment("message", "danger");
+        StandardSlackService probe = new StandardSlackService("dead-letter-domain", "token", "#probe");
+        probe.deadLetter(RoomResult.failure("#probe", HttpStatus.SC_INTERNAL_SERVER_ERROR, "HTTP 500"), attachment);
+        StandardSlackService build = new StandardSlackService("dead-letter-domain", "token", "#build");
+        build.setOrigin("job", 1);
+        build.deadLetter(RoomResult.failure("#build", HttpStatus.SC_NOT_FOUND, "HTTP 404"), attachment);
+        build.deadLetter(RoomResult.failure("#build", HttpStatus.SC_INTERNAL_SERVER_ERROR, "HTTP 500"), attachment);
+
+        assertEquals(0, SlackDeadLetters.get().discard("#probe"));
+        assertEquals(1, SlackDeadLetters.get().discard("#build"));
+    }
+
+    @Test
+    public void tokenIsRedactedFromLoggedUrls() {
+        assertEquals("https://team.slack.com/services/hooks/jenkins-ci?token=****",
+                StandardSlackService.redact("https://team.slack.com/services/hooks/jenkins-ci?token=s3cr3t"));
+        assertEquals("https://team.slack.com/hook?a=b&token=****&c=d",
+                StandardSlackService.redact("https://team.slack.com/hook?a=b&token=s3cr3t&c=d"));
+    }
 }